@@ -0,0 +1,160 @@
+package server.bench;
+
+import server.ServerConfig;
+import server.handlers.ClientRequestHandler;
+import server.models.ClientSession;
+import server.models.Game;
+import server.models.GameMatch;
+import server.models.Room;
+import server.services.GameManager;
+import server.services.PuzzleCatalog;
+import server.services.UserManager;
+import utils.ClientRequest;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Microbenchmark della partita corrente al crescere dei thread (make bench).
+ * Con 1, 2, 4 ... N thread misura, mentre un altro thread cambia la partita della stanza
+ * con GameManager.setCurrentGame (prepara, archivia e scambia sotto il monitor del manager):
+ *  - lock:     GameManager.getCurrentMatch sotto il monitor del manager, come prima della lettura senza lock
+ *  - volatile: GameManager.getCurrentMatch attuale
+ *  - handler:  richieste requestGameInfo e requestGameStats servite da ClientRequestHandler.dispatch
+ * Utenti, journal e storico vanno in una cartella temporanea: i dati del server non vengono toccati.
+ *
+ * Uso: java -cp bin-bench:bin server.bench.CurrentMatchBench [thread massimi] [secondi per misura] [ms tra due cambi]
+ */
+public class CurrentMatchBench {
+    private enum Mode { LOCK, VOLATILE, HANDLER }
+
+    private final GameManager gm;
+    private final Room room;
+    private final Game game;
+    private final ClientSession[] sessions;
+    private volatile boolean stop;
+
+    // sink per evitare che il JIT elimini le letture
+    private static volatile Object sink;
+
+    private CurrentMatchBench(int maxThreads) {
+        gm = GameManager.getInstance();
+        room = gm.getRoom(0);
+        game = PuzzleCatalog.getInstance().next();
+        gm.setCurrentGame(room, game);
+
+        // una sessione (e un giocatore) per thread
+        sessions = new ClientSession[maxThreads];
+        for (int i = 0; i < maxThreads; i++) {
+            String name = "bench" + i;
+            UserManager.getInstance().register(name, "p");
+            sessions[i] = new ClientSession();
+            sessions[i].setUsername(name);
+            sessions[i].setLoggedIn(true);
+            sessions[i].setRoom(room);
+        }
+    }
+
+    private double run(Mode mode, int threads, int seconds, long swapMillis) throws InterruptedException {
+        stop = false;
+        LongAdder ops = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            ClientSession session = sessions[t];
+            workers[t] = new Thread(() -> {
+                ClientRequest info = new ClientRequest.GameInfo();
+                ClientRequest stats = new ClientRequest.RequestGameStats();
+                ready.countDown();
+                long n = 0;
+                Object last = null;
+                while (!stop) {
+                    // blocchi di operazioni: il contatore condiviso non deve pesare sulla misura
+                    switch (mode) {
+                        case LOCK:
+                            for (int i = 0; i < 1024; i++) last = lockedRead();
+                            n += 1024;
+                            break;
+                        case VOLATILE:
+                            for (int i = 0; i < 1024; i++) last = gm.getCurrentMatch(room);
+                            n += 1024;
+                            break;
+                        case HANDLER:
+                            for (int i = 0; i < 16; i++) last = ClientRequestHandler.dispatch((i & 1) == 0 ? info : stats, session);
+                            n += 16;
+                            break;
+                    }
+                }
+                sink = last;
+                ops.add(n);
+            }, "bench-" + t);
+            workers[t].start();
+        }
+
+        Thread writer = new Thread(() -> {
+            while (!stop) {
+                gm.setCurrentGame(room, game);
+                try {
+                    Thread.sleep(swapMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "bench-writer");
+
+        ready.await();
+        long t0 = System.nanoTime();
+        writer.start();
+        Thread.sleep(seconds * 1000L);
+        stop = true;
+        for (Thread t : workers) t.join();
+        writer.join();
+        return ops.sum() / ((System.nanoTime() - t0) / 1e9);
+    }
+
+    // Lettura com'era prima: metodo synchronized, quindi sul monitor del GameManager
+    private GameMatch lockedRead() {
+        synchronized (gm) {
+            return gm.getCurrentMatch(room);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long swapMillis = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+        ServerConfig.load("server.properties");
+        Path tmp = Files.createTempDirectory("current-match-bench");
+        ServerConfig.USERS_FILE_PATH = tmp.resolve("Users.json").toString();
+        ServerConfig.HISTORY_FILE_PATH = tmp.resolve("GamesHistory.json").toString();
+        ServerConfig.HISTORY_DIR = tmp.resolve("history").toString();
+        ServerConfig.ROTATION_STATE_PATH = tmp.resolve("rotation.properties").toString();
+        ServerConfig.JOURNAL_DIR = tmp.resolve("journal").toString();
+        ServerConfig.GAME_DURATION = 600;
+
+        // i log del server (uno a ogni cambio partita) non devono finire tra i risultati
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        CurrentMatchBench bench = new CurrentMatchBench(maxThreads);
+        out.println("Core: " + Runtime.getRuntime().availableProcessors() + ", " + seconds
+            + "s per misura, cambio partita ogni " + swapMillis + "ms");
+
+        // riscaldamento di ogni modalità
+        for (Mode mode : Mode.values()) bench.run(mode, 1, 1, swapMillis);
+
+        out.printf("%-8s %18s %18s %18s%n", "thread", "lock op/s", "volatile op/s", "handler op/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double locked = bench.run(Mode.LOCK, threads, seconds, swapMillis);
+            double lockFree = bench.run(Mode.VOLATILE, threads, seconds, swapMillis);
+            double handler = bench.run(Mode.HANDLER, threads, seconds, swapMillis);
+            out.printf("%-8d %,18.0f %,18.0f %,18.0f%n", threads, locked, lockFree, handler);
+        }
+        System.exit(0);
+    }
+}
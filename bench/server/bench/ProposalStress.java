@@ -0,0 +1,110 @@
+package server.bench;
+
+import server.ServerConfig;
+import server.handlers.GameHandler;
+import server.models.ClientSession;
+import server.models.Game;
+import server.models.GameMatch;
+import server.models.PlayerGameState;
+import server.models.Room;
+import server.models.User;
+import server.services.GameManager;
+import server.services.PuzzleCatalog;
+import server.services.UserManager;
+import utils.ClientRequest;
+import utils.ServerResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stress test delle proposte concorrenti (make stress).
+ * Per ogni round un giocatore nuovo invia in parallelo, in ordine casuale, tutte le proposte giuste
+ * (ripetute) e alcune sbagliate. Alla fine la partita deve risultare chiusa una sola volta
+ * e statistiche dell'utente, classifica della partita e stato del giocatore devono coincidere.
+ * Utenti, journal e storico vanno in una cartella temporanea: i dati del server non vengono toccati.
+ *
+ * Uso: java -cp bin-bench:bin server.bench.ProposalStress [round] [thread]
+ */
+public class ProposalStress {
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        ServerConfig.load("server.properties");
+        Path tmp = Files.createTempDirectory("proposal-stress");
+        ServerConfig.USERS_FILE_PATH = tmp.resolve("Users.json").toString();
+        ServerConfig.HISTORY_FILE_PATH = tmp.resolve("GamesHistory.json").toString();
+        ServerConfig.HISTORY_DIR = tmp.resolve("history").toString();
+        ServerConfig.ROTATION_STATE_PATH = tmp.resolve("rotation.properties").toString();
+        ServerConfig.JOURNAL_DIR = tmp.resolve("journal").toString();
+        ServerConfig.GAME_DURATION = 600;
+
+        GameManager gm = GameManager.getInstance();
+        Room room = gm.getRoom(0);
+        Game game = PuzzleCatalog.getInstance().next();
+        List<String> wrong = new ArrayList<>();
+        for (Game.Group g : game.getGroups()) wrong.add(g.getWords().get(0));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int mismatches = 0;
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            gm.setCurrentGame(room, game);
+            String name = "stress" + r;
+            UserManager.getInstance().register(name, "p");
+            ClientSession session = new ClientSession();
+            session.setUsername(name);
+            session.setLoggedIn(true);
+            session.setRoom(room);
+
+            List<Callable<ServerResponse>> tasks = new ArrayList<>();
+            for (int k = 0; k < 4; k++) {
+                for (Game.Group g : game.getGroups()) {
+                    ClientRequest.SubmitProposal p = new ClientRequest.SubmitProposal(g.getWords());
+                    tasks.add(() -> GameHandler.handleSubmitProposal(p, session));
+                }
+            }
+            for (int k = 0; k < 6; k++) {
+                ClientRequest.SubmitProposal p = new ClientRequest.SubmitProposal(wrong);
+                tasks.add(() -> GameHandler.handleSubmitProposal(p, session));
+            }
+            Collections.shuffle(tasks);
+
+            int finishes = 0;
+            for (Future<ServerResponse> f : pool.invokeAll(tasks)) {
+                ServerResponse resp = f.get();
+                if (resp instanceof ServerResponse.Proposal && Boolean.TRUE.equals(((ServerResponse.Proposal) resp).isFinished)) finishes++;
+            }
+
+            GameMatch match = gm.getCurrentMatch(room);
+            PlayerGameState state = match.getPlayerState(name);
+            User user = UserManager.getInstance().getUser(name);
+            List<ServerResponse.PlayerResult> ranking = match.getStats().top(0);
+            boolean ok = finishes == 1
+                && state.isFinished()
+                && user.getPuzzlesPlayed() == 1
+                && user.getTotalScore() == state.getScore()
+                && match.getStatsSnapshot().finished == 1
+                && ranking.size() == 1 && ranking.get(0).score == state.getScore();
+            if (!ok) {
+                mismatches++;
+                System.out.println("DIFFERENZA round " + r + ": chiusure=" + finishes + " giocate=" + user.getPuzzlesPlayed()
+                    + " punteggio=" + user.getTotalScore() + "/" + state.getScore()
+                    + " finiti=" + match.getStatsSnapshot().finished);
+            }
+        }
+        pool.shutdown();
+
+        System.out.printf("round=%d thread=%d differenze=%d (%.1fs)%n", rounds, threads, mismatches, (System.nanoTime() - t0) / 1e9);
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
@@ -14,6 +14,7 @@ public class ClientConfig {
     public int connectTimeout;
     public int tcpBufferSize;
     public int udpBufferSize;
+    public boolean binaryProtocol;
     public String trophyFile;
     public String skeletonFile; 
 
@@ -28,6 +29,9 @@ public class ClientConfig {
         this.connectTimeout = Integer.parseInt(props.getProperty("connectTimeout", "5000"));
         this.tcpBufferSize = Integer.parseInt(props.getProperty("tcpBufferSize", "8192"));
         this.udpBufferSize = Integer.parseInt(props.getProperty("udpBufferSize", "4096"));
+
+        // Protocollo: "json" (default, compatibile con ogni server) o "binary"
+        this.binaryProtocol = "binary".equalsIgnoreCase(props.getProperty("protocol", "json").trim());
         
         // File grafici
         this.trophyFile = props.getProperty("trophyFile", "decorations/trophy.txt");   
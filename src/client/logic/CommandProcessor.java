@@ -43,6 +43,7 @@ public class CommandProcessor {
         hiddenCmd("submit", "", "", this::doSubmitFake);
         hiddenCmd("oracle", "<psw>", "Rivela soluzione", this::doOracle);
         hiddenCmd("god",    "<psw>", "Rivela utenti",    this::doGod);
+        hiddenCmd("stats",  "<psw>", "Statistiche server", this::doServerStats);
     }
 
     private void cmd(String name, String alias, String args, String desc, Command.CommandHandler handler) {
@@ -182,6 +183,11 @@ public class CommandProcessor {
         net.sendRequest(new ClientRequest.God(args[0]));
         return true;
     }
+    private boolean doServerStats(String[] args) throws IOException {
+        if (args.length != 1) throw new IllegalArgumentException("Usa: /stats <admin_password>");
+        net.sendRequest(new ClientRequest.ServerStats(args[0]));
+        return true;
+    }
 
     private boolean doHelp(String[] args) { ui.showHelp(commandsList.values()); return true; }
     private boolean doExit(String[] args) { return false; }
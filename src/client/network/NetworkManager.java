@@ -1,13 +1,18 @@
 package client.network;
 
 import client.ClientConfig;
+import utils.BinaryCodec;
 import utils.ClientRequest;
+import utils.ClientRequestAdapterFactory;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * Invia messaggi di richiesta al server
@@ -16,7 +21,13 @@ public class NetworkManager {
     private SocketChannel tcpChannel;
     private DatagramSocket udpSocket;
     private final ClientConfig config;
-    private final Gson gson = new Gson();
+    // la factory scrive "operation" come primo campo: il server legge la richiesta senza campi in attesa
+    private final Gson gson = new GsonBuilder().registerTypeAdapterFactory(new ClientRequestAdapterFactory()).create();
+
+    // Protocollo binario: griglia dell'ultima partita ricevuta, per inviare le parole come indici
+    private final BinaryCodec.Writer binaryWriter = new BinaryCodec.Writer();
+    private Integer gridGameId;
+    private List<String> grid;
 
     public NetworkManager(ClientConfig config) {
         this.config = config;
@@ -31,17 +42,45 @@ public class NetworkManager {
             config.connectTimeout
         );
         tcpChannel.configureBlocking(true); 
+
+        // Handshake del protocollo binario: il server risponde già in binario
+        if (config.binaryProtocol) {
+            writeFully(ByteBuffer.wrap(new byte[] { BinaryCodec.MAGIC, BinaryCodec.VERSION }));
+        }
     }
 
     // gestione di request sollevate dal Command Processor
-    public void sendRequest(ClientRequest req) throws IOException {
+    public synchronized void sendRequest(ClientRequest req) throws IOException {
         if (tcpChannel == null || !tcpChannel.isOpen()) {
             throw new IOException("Non connesso al server.");
         }
+
+        if (config.binaryProtocol) {
+            binaryWriter.reset();
+            BinaryCodec.encodeRequest(req, binaryWriter, gridGameId, grid);
+            int size = binaryWriter.size();
+            ByteBuffer frame = ByteBuffer.allocate(BinaryCodec.varintSize(size) + size);
+            BinaryCodec.putVarint(frame, size);
+            frame.put(binaryWriter.array(), 0, size);
+            frame.flip();
+            writeFully(frame);
+            return;
+        }
         
-        String json = gson.toJson(req);
+        String json = gson.toJson(req, ClientRequest.class);
         String message = json + "\n";
-        tcpChannel.write(ByteBuffer.wrap(message.getBytes()));
+        writeFully(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) tcpChannel.write(buffer);
+    }
+
+    // aggiornata dal TcpListener quando arriva la griglia di una partita
+    public synchronized void updateGrid(Integer gameId, List<String> words) {
+        if (gameId == null || words == null || words.isEmpty()) return;
+        this.grid = words;
+        this.gridGameId = gameId;
     }
 
     // evito chiusure multiple
@@ -59,8 +98,8 @@ public class NetworkManager {
         } catch (Exception e) {}
     }
 
+    public boolean isBinaryProtocol() { return config.binaryProtocol; }
     public SocketChannel getTcpChannel() { return tcpChannel; }
     public DatagramSocket getUdpSocket() { return udpSocket; }
     public int getLocalUdpPort() { return (udpSocket != null) ? udpSocket.getLocalPort() : 0; }
 }
-
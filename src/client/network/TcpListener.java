@@ -4,6 +4,7 @@ import client.ui.ClientRenderer;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import utils.BinaryCodec;
 import utils.ServerResponse;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
@@ -31,6 +32,14 @@ public class TcpListener implements Runnable {
             StringBuilder sb = new StringBuilder();
             
             while (net.getTcpChannel().isOpen()) {
+                // nel binario un frame può superare il buffer: lo raddoppio
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+
                 int read = net.getTcpChannel().read(buffer);
 
                 // gestisco disconnessione del server in modo pulito
@@ -39,7 +48,9 @@ public class TcpListener implements Runnable {
                     break; 
                 }
                 
-                if (read > 0) {
+                if (read > 0 && net.isBinaryProtocol()) {
+                    readBinaryFrames(buffer);
+                } else if (read > 0) {
                     buffer.flip();
                     byte[] bytes = new byte[buffer.remaining()];
                     buffer.get(bytes);
@@ -62,6 +73,33 @@ public class TcpListener implements Runnable {
         }
     }
 
+    // estraggo i frame completi (lunghezza varint + payload), il resto rimane nel buffer
+    private void readBinaryFrames(ByteBuffer buffer) {
+        int end = buffer.position();
+        int pos = 0;
+        while (pos < end) {
+            long header = BinaryCodec.peekVarint(buffer, pos, end);
+            if (header == -1) break;
+            if (header == -2) throw new IllegalStateException("frame binario non valido");
+
+            int length = (int) (header >>> 8);
+            int prefix = (int) (header & 0xFF);
+            if (pos + prefix + length > end) break;
+
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(pos + prefix + length).position(pos + prefix);
+            try {
+                render(BinaryCodec.decodeResponse(payload.slice()));
+            } catch (RuntimeException e) {
+                System.err.println("Frame Error: " + e.getMessage());
+            }
+            pos += prefix + length;
+        }
+        buffer.flip();
+        buffer.position(pos);
+        buffer.compact();
+    }
+
     private void handleDisconnection(String reason) {
         ui.showError(reason);
         net.close();
@@ -75,25 +113,52 @@ public class TcpListener implements Runnable {
 
             String code = obj.get("objectCode").getAsString(); // trovo il tipo di risposta
 
-            // gestisco ogni risposta 
+            // trovo la classe giusta per ogni risposta
+            Class<? extends ServerResponse> type;
             switch (code) {
-                case "RES_ERROR": ui.showError(gson.fromJson(obj, ServerResponse.Error.class).message); break;
-                case "RES_GENERIC": ui.showMessage(gson.fromJson(obj, ServerResponse.Generic.class).message); break;
-                case "RES_EVENT": ui.showNotification(gson.fromJson(obj, ServerResponse.Event.class).message); break;
-                case "RES_AUTH":
-                    ServerResponse.Auth auth = gson.fromJson(obj, ServerResponse.Auth.class);
-                    ui.showMessage(auth.message);
-                    if (auth.gameInfo != null) ui.showGameInfo(auth.gameInfo);
-                    break;
-                case "RES_GAME_INFO": ui.showGameInfo(gson.fromJson(obj, ServerResponse.GameInfoData.class)); break;
-                case "RES_PROPOSAL": ui.showSubmitResult(gson.fromJson(obj, ServerResponse.Proposal.class)); break;
-                case "RES_GAME_STATS": ui.showGameStats(gson.fromJson(obj, ServerResponse.GameStats.class)); break;
-                case "RES_PLAYER_STATS": ui.showPlayerStats(gson.fromJson(obj, ServerResponse.PlayerStats.class)); break;
-                case "RES_LEADERBOARD": ui.showLeaderboard(gson.fromJson(obj, ServerResponse.Leaderboard.class)); break;
-                case "RES_ADMIN": ui.showAdminInfo(gson.fromJson(obj, ServerResponse.AdminInfo.class)); break;
+                case "RES_ERROR": type = ServerResponse.Error.class; break;
+                case "RES_GENERIC": type = ServerResponse.Generic.class; break;
+                case "RES_EVENT": type = ServerResponse.Event.class; break;
+                case "RES_AUTH": type = ServerResponse.Auth.class; break;
+                case "RES_GAME_INFO": type = ServerResponse.GameInfoData.class; break;
+                case "RES_PROPOSAL": type = ServerResponse.Proposal.class; break;
+                case "RES_GAME_STATS": type = ServerResponse.GameStats.class; break;
+                case "RES_PLAYER_STATS": type = ServerResponse.PlayerStats.class; break;
+                case "RES_LEADERBOARD": type = ServerResponse.Leaderboard.class; break;
+                case "RES_ADMIN": type = ServerResponse.AdminInfo.class; break;
                 
-                default: System.err.println("Codice sconosciuto: " + code);
+                default: System.err.println("Codice sconosciuto: " + code); return;
             }
+            render(gson.fromJson(obj, type));
         } catch (Exception e) { System.err.println("JSON Error: " + e.getMessage()); }
     }
-}
\ No newline at end of file
+
+    // gestisco ogni risposta, qualunque sia il protocollo con cui è arrivata
+    private void render(ServerResponse resp) {
+        switch (resp.objectCode) {
+            case "RES_ERROR": ui.showError(resp.message); break;
+            case "RES_GENERIC": ui.showMessage(resp.message); break;
+            case "RES_EVENT": ui.showNotification(resp.message); break;
+            case "RES_AUTH":
+                ServerResponse.Auth auth = (ServerResponse.Auth) resp;
+                ui.showMessage(auth.message);
+                if (auth.gameInfo != null) {
+                    net.updateGrid(auth.gameInfo.gameId, auth.gameInfo.words);
+                    ui.showGameInfo(auth.gameInfo);
+                }
+                break;
+            case "RES_GAME_INFO":
+                ServerResponse.GameInfoData info = (ServerResponse.GameInfoData) resp;
+                if (!Boolean.TRUE.equals(info.isFinished)) net.updateGrid(info.gameId, info.words);
+                ui.showGameInfo(info);
+                break;
+            case "RES_PROPOSAL": ui.showSubmitResult((ServerResponse.Proposal) resp); break;
+            case "RES_GAME_STATS": ui.showGameStats((ServerResponse.GameStats) resp); break;
+            case "RES_PLAYER_STATS": ui.showPlayerStats((ServerResponse.PlayerStats) resp); break;
+            case "RES_LEADERBOARD": ui.showLeaderboard((ServerResponse.Leaderboard) resp); break;
+            case "RES_ADMIN": ui.showAdminInfo((ServerResponse.AdminInfo) resp); break;
+            
+            default: System.err.println("Codice sconosciuto: " + resp.objectCode);
+        }
+    }
+}
@@ -1,127 +1,234 @@
 package server;
 
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
-import server.handlers.ResponseUtils; 
+import server.handlers.ResponseUtils;
 import server.models.ClientSession;
 import server.models.Game;
 import server.models.GameMatch;
 import server.models.PlayerGameState;
+import server.models.Room;
 import server.network.NetworkService;
 import server.services.GameManager;
+import server.services.PuzzleCatalog;
 import server.services.UserManager;
 import server.ui.ServerLogger;
 import utils.ServerResponse;
 
-import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ciclo di vita delle partite guidato da eventi.
+ * Un solo thread con timer (ScheduledExecutorService) esegue inizio, avvisi e fine di ogni round:
+ * tutte le transizioni avvengono su quel thread, quindi il round non ha bisogno di lock.
+ * Ogni stanza ha il proprio round con i propri timer, che si possono annullare (fine anticipata)
+ * o rifare (nuova durata). Il primo round della stanza i dura i * ROOM_STAGGER_SECONDS in più,
+ * così i cambi di partita delle stanze non cadono nello stesso istante.
+ */
+public class GameScheduler {
+    // Avvisi inviati ai giocatori: secondi mancanti alla fine
+    private static final int[] WARNINGS = {60, 10};
+    // Attesa prima di riprovare se l'avvio di un round fallisce
+    private static final long RETRY_MILLIS = 5000;
 
-public class GameScheduler implements Runnable {
     private final NetworkService netService;
-    private volatile boolean running = true;
-    private final Gson gson = new Gson();
+    private final ScheduledExecutorService timer;
+    private final Round[] rounds; // round in corso per stanza, usati solo dal thread del timer
 
     public GameScheduler(NetworkService netService) {
         this.netService = netService;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "game-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true); // i timer annullati non restano in coda
+        this.timer = executor;
+        this.rounds = new Round[GameManager.getInstance().getRooms().length];
+    }
+
+    public void start() {
+        ServerLogger.info("Avvio Game Scheduler (" + rounds.length + " stanze)...");
+        for (Room room : GameManager.getInstance().getRooms()) {
+            long stagger = room.getIndex() * ServerConfig.ROOM_STAGGER_SECONDS * 1000L;
+            timer.execute(() -> startRound(room, stagger, null));
+        }
     }
 
     public void stop() {
-        this.running = false;
-    }
-
-    @Override
-    public void run() {
-        ServerLogger.info("Avvio Game Scheduler...");
-
-        while (running) {
-            try (JsonReader reader = new JsonReader(new FileReader(ServerConfig.DATA_FILE_PATH))) {
-                reader.beginArray();
-                
-                while (reader.hasNext() && running) {
-                    // Leggo il Blueprint dal JSON
-                    Game g = gson.fromJson(reader, Game.class);
-                    
-                    // Imposto la partita nel Manager
-                    GameManager manager = GameManager.getInstance();
-                    manager.setCurrentGame(g);
-                    GameMatch currentMatch = manager.getCurrentMatch();
-
-                    ServerLogger.game("NUOVA PARTITA ID: " + g.getGameId() + " (Run #" + currentMatch.getRunNumber() + ")");
-
-                    // Inizializzazione Giocatori Connessi
-                    for (ClientSession session : netService.getAllSessions()) {
-                        if (session.isLoggedIn()) {
-                            currentMatch.getOrCreatePlayerState(session.getUsername());
-                        }
-                    }
-                    
-                    // Notifiche Start
-                    notifyNewGameUDP();
-                    broadcastTcpGameUpdate(currentMatch); 
-
-                    // Attesa Durata Partita
-                    try {
-                        Thread.sleep(ServerConfig.GAME_DURATION * 1000L);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-
-                    // Fine Partita (Timeout)
-                    handleGameEndUDP(currentMatch); // Passiamo il match per controllare chi ha finito
-                    broadcastTcpGameUpdate(currentMatch); // Aggiornamento finale con risultati
-                }
-                ServerLogger.info("Fine file partite. Ricomincio il ciclo.");
-                
-            } catch (Exception e) {
-                if (running) {
-                    ServerLogger.error("Errore Scheduler: " + e.getMessage());
-                    e.printStackTrace();
-                    try { Thread.sleep(5000); } catch (InterruptedException ie) {}
-                }
+        timer.shutdownNow();
+    }
+
+    // Chiude subito il round in corso (comando da console); il successivo parte immediatamente.
+    // roomIndex < 0: tutte le stanze
+    public void endRoundNow(int roomIndex) {
+        submit(() -> {
+            for (Round round : selectRounds(roomIndex)) endRound(round);
+        });
+    }
+
+    // Nuova durata residua del round in corso: i timer vengono annullati e riprogrammati
+    public void reschedule(int roomIndex, int secondsLeft) {
+        submit(() -> {
+            for (Round round : selectRounds(roomIndex)) {
+                if (round.ended) continue;
+                round.match.setEndTimeMillis(System.currentTimeMillis() + secondsLeft * 1000L);
+                arm(round);
+                ServerLogger.game("Partita ID " + round.match.getGameId() + " (" + round.room.getName() + "): fine tra " + secondsLeft + "s");
+                broadcastTcpGameUpdate(round.room, round.match);
             }
+        });
+    }
+
+    private List<Round> selectRounds(int roomIndex) {
+        List<Round> selected = new ArrayList<>();
+        for (Round round : rounds) {
+            if (round != null && (roomIndex < 0 || round.room.getIndex() == roomIndex)) selected.add(round);
+        }
+        return selected;
+    }
+
+    private void submit(Runnable action) {
+        if (!timer.isShutdown()) timer.execute(action);
+    }
+
+    // EVENTI
+
+    // extraMillis allunga il round (sfasamento iniziale delle stanze), ended è la partita appena chiusa
+    private void startRound(Room room, long extraMillis, GameMatch ended) {
+        try {
+            // Di norma la prossima partita è già pronta (preparata durante il round): qui resta solo lo scambio
+            GameManager manager = GameManager.getInstance();
+            if (room.getNextMatch() == null) prepare(room);
+            manager.startNextMatch(room);
+            GameMatch currentMatch = manager.getCurrentMatch(room);
+            if (extraMillis > 0) currentMatch.setEndTimeMillis(currentMatch.getEndTimeMillis() + extraMillis);
+
+            ServerLogger.game("NUOVA PARTITA ID: " + currentMatch.getGameId() + " (Run #" + currentMatch.getRunNumber() + ", " + room.getName() + ")");
+
+            Round round = new Round(room, currentMatch);
+            rounds[room.getIndex()] = round;
+            arm(round);
+
+            // Notifiche di fine e inizio: stati dei giocatori creati subito, invii a lotti distribuiti nel tempo
+            RolloverFanout.getInstance().start(netService, timer, room, ended, currentMatch);
+        } catch (Exception e) {
+            ServerLogger.error("Errore Scheduler: " + e.getMessage());
+            e.printStackTrace();
+            schedule(() -> startRound(room, 0, ended), RETRY_MILLIS);
+        }
+    }
+
+    // Prossimo puzzle dal catalogo, compilato e con le griglie dei giocatori della stanza già mescolate
+    private void prepare(Room room) {
+        Game g = PuzzleCatalog.getInstance().next();
+        GameMatch next = GameManager.getInstance().prepareNextMatch(room, g);
+        for (ClientSession session : netService.getRoomSessions(room)) {
+            next.getOrCreatePlayerState(session.getUsername());
+        }
+        ServerLogger.info("Preparata partita ID " + g.getGameId() + " per " + room.getName());
+    }
+
+    private void prewarm(Round round) {
+        if (round.ended || round.room.getNextMatch() != null) return;
+        try {
+            prepare(round.room);
+        } catch (Exception e) {
+            // si riprova al cambio partita
+            ServerLogger.error("Errore preparazione partita: " + e.getMessage());
         }
     }
 
-    private void notifyNewGameUDP() {
-        ServerResponse.Event event = new ServerResponse.Event("NUOVA PARTITA INIZIATA!");
-        netService.sendUdpResponse(event);
-    }
-
-    private void handleGameEndUDP(GameMatch match) {
-        // Aggiorno le statistiche per chi è andato in Timeout
-        if (match != null) {
-            for(ClientSession session : netService.getAllSessions()) {
-                if(session.isLoggedIn()) {
-                    PlayerGameState state = match.getPlayerState(session.getUsername());
-                    // Se lo stato esiste e NON è finito, allora è un timeout
-                    if (state != null && !state.isFinished()) {
-                        UserManager.getInstance().updateStatsTimeOut(session.getUsername());
-                        // Segniamo come finito nello stato locale per coerenza
-                        state.setFinished(true); 
-                    }
-                }
+    private void warn(Round round, int seconds) {
+        if (round.ended) return;
+        netService.sendUdpResponse(new ServerResponse.Event("MANCANO " + seconds + " SECONDI!"), round.room);
+    }
+
+    private void endRound(Round round) {
+        if (round.ended) return;
+        round.ended = true;
+        round.cancelTimers();
+
+        // fine anticipata: da ora in poi le proposte ricevono "Tempo scaduto"
+        if (round.match.getEndTimeMillis() > System.currentTimeMillis()) {
+            round.match.setEndTimeMillis(System.currentTimeMillis());
+        }
+
+        try {
+            handleTimeouts(round.room, round.match); // Passiamo il match per controllare chi ha finito
+        } catch (Exception e) {
+            ServerLogger.error("Errore fine partita: " + e.getMessage());
+        }
+        // i risultati finali partono insieme all'annuncio della nuova partita
+        startRound(round.room, 0, round.match);
+    }
+
+    // TIMER
+
+    // (Ri)programma avvisi e fine del round rispetto alla sua fine prevista
+    private void arm(Round round) {
+        round.cancelTimers();
+        long left = round.match.getEndTimeMillis() - System.currentTimeMillis();
+        for (int seconds : WARNINGS) {
+            long at = left - seconds * 1000L;
+            if (at > 0) round.timers.add(schedule(() -> warn(round, seconds), at));
+        }
+        long prewarmAt = left - ServerConfig.PREWARM_LEAD_SECONDS * 1000L;
+        round.timers.add(schedule(() -> prewarm(round), Math.max(0, prewarmAt)));
+        round.timers.add(schedule(() -> endRound(round), Math.max(0, left)));
+    }
+
+    private ScheduledFuture<?> schedule(Runnable action, long delayMillis) {
+        return timer.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Round in corso in una stanza: partita e timer ancora pendenti
+    private static class Round {
+        final Room room;
+        final GameMatch match;
+        final List<ScheduledFuture<?>> timers = new ArrayList<>();
+        boolean ended;
+
+        Round(Room room, GameMatch match) {
+            this.room = room;
+            this.match = match;
+        }
+
+        void cancelTimers() {
+            for (ScheduledFuture<?> f : timers) f.cancel(false);
+            timers.clear();
+        }
+    }
+
+    // NOTIFICHE
+
+    // Aggiorno le statistiche per chi è andato in Timeout (subito, non a lotti)
+    private void handleTimeouts(Room room, GameMatch match) {
+        for (ClientSession session : netService.getRoomSessions(room)) {
+            PlayerGameState state = match.getPlayerState(session.getUsername());
+            // tryFinish è atomico: se il giocatore chiude la partita proprio ora, conta una volta sola
+            if (state != null && state.tryFinish(false)) {
+                match.onPlayerFinished(session.getUsername(), state, state.snapshot());
+                UserManager.getInstance().updateStatsTimeOut(session.getUsername());
             }
         }
-        
-        ServerResponse.Event event = new ServerResponse.Event("TEMPO SCADUTO");
-        event.isFinished = true;
-        netService.sendUdpResponse(event);
     }
 
-    // AGGIORNAMENTO TCP 
-    private void broadcastTcpGameUpdate(GameMatch match) {
+    // AGGIORNAMENTO TCP
+    private void broadcastTcpGameUpdate(Room room, GameMatch match) {
         if (match == null) return;
 
-        for (ClientSession session : netService.getAllSessions()) {
-            if (session.isLoggedIn()) {
-                // Recupero lo stato da match
-                PlayerGameState pState = match.getOrCreatePlayerState(session.getUsername());
-                
-                // Uso ResponseUtils per costruire il JSON
-                ServerResponse.GameInfoData info = ResponseUtils.buildGameInfo(match, pState);
-                
-                netService.sendTcpResponse(session, ResponseUtils.toJson(info));
-            }
+        for (ClientSession session : netService.getRoomSessions(room)) {
+            // Recupero lo stato da match
+            PlayerGameState pState = match.getOrCreatePlayerState(session.getUsername());
+
+            // Uso ResponseUtils per costruire la risposta
+            ServerResponse.GameInfoData info = ResponseUtils.buildGameInfo(match, session.getUsername(), pState);
+
+            netService.sendTcpResponse(session, info);
         }
     }
-}
\ No newline at end of file
+}
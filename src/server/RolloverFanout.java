@@ -0,0 +1,135 @@
+package server;
+
+import server.handlers.ResponseUtils;
+import server.models.ClientSession;
+import server.models.GameMatch;
+import server.models.PlayerGameState;
+import server.models.Room;
+import server.network.NetworkService;
+import server.services.GameManager;
+import utils.ServerResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Notifiche di cambio partita distribuite nel tempo.
+ * Invece di avvisare tutti i giocatori della stanza nello stesso istante, le sessioni
+ * vengono divise in lotti da ROLLOVER_BATCH_SIZE inviati nell'arco di ROLLOVER_WINDOW_MILLIS,
+ * ognuno con un piccolo ritardo casuale: il picco di CPU, rete e richieste dei client si spalma.
+ * Gli stati dei giocatori nella nuova partita vengono creati tutti prima del primo lotto.
+ */
+public class RolloverFanout {
+    private static final RolloverFanout instance = new RolloverFanout();
+
+    // Metriche per l'amministrazione
+    private final LongAdder rollovers = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder batchNanos = new LongAdder();
+    private volatile long lastMaxBatchMicros;
+    private volatile long lastSpanMillis; // dal cambio partita all'ultimo lotto inviato
+
+    private RolloverFanout() {}
+
+    public static RolloverFanout getInstance() {
+        return instance;
+    }
+
+    // ended: partita appena finita (null al primo avvio), started: nuova partita della stanza
+    void start(NetworkService netService, ScheduledExecutorService timer, Room room, GameMatch ended, GameMatch started) {
+        List<ClientSession> targets = new ArrayList<>(netService.getRoomSessions(room));
+
+        // stati pronti prima del primo invio: i lotti fanno solo serializzazione e accodamento
+        for (ClientSession session : targets) started.getOrCreatePlayerState(session.getUsername());
+
+        int size = Math.max(1, ServerConfig.ROLLOVER_BATCH_SIZE);
+        int count = (targets.size() + size - 1) / size;
+        rollovers.increment();
+        if (count == 0) return;
+
+        long interval = ServerConfig.ROLLOVER_WINDOW_MILLIS / count;
+        Progress progress = new Progress(count);
+        for (int b = 0; b < count; b++) {
+            List<ClientSession> batch = targets.subList(b * size, Math.min(targets.size(), (b + 1) * size));
+            long jitter = (interval > 1) ? ThreadLocalRandom.current().nextLong(interval / 2) : 0;
+            timer.schedule(() -> sendBatch(netService, room, ended, started, batch, progress),
+                    b * interval + jitter, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sendBatch(NetworkService netService, Room room, GameMatch ended, GameMatch started,
+                           List<ClientSession> batch, Progress progress) {
+        long t0 = System.nanoTime();
+
+        // la stanza è già passata a un'altra partita: la griglia nuova la manda il fan-out successivo,
+        // i risultati della partita chiusa partono comunque
+        boolean current = GameManager.getInstance().getCurrentMatch(room) == started;
+        if (current || ended != null) {
+            // solo chi è ancora nella stanza
+            List<ClientSession> members = new ArrayList<>(batch.size());
+            for (ClientSession s : batch) {
+                if (s.isLoggedIn() && s.getRoom() == room) members.add(s);
+            }
+
+            if (ended != null) {
+                ServerResponse.Event timeout = new ServerResponse.Event("TEMPO SCADUTO");
+                timeout.isFinished = true;
+                netService.sendUdpResponse(timeout, members);
+            }
+            if (current) netService.sendUdpResponse(new ServerResponse.Event("NUOVA PARTITA INIZIATA!"), members);
+
+            for (ClientSession session : members) {
+                // risultati finali della partita chiusa (già archiviata: solo lettura), poi la griglia della nuova
+                if (ended != null) {
+                    PlayerGameState old = ended.getPlayerState(session.getUsername());
+                    netService.sendTcpResponse(session, ResponseUtils.buildGameInfo(ended, session.getUsername(), old));
+                }
+                if (current) {
+                    PlayerGameState state = started.getOrCreatePlayerState(session.getUsername());
+                    netService.sendTcpResponse(session, ResponseUtils.buildGameInfo(started, session.getUsername(), state));
+                }
+            }
+            sessions.add(members.size());
+        }
+
+        long elapsed = System.nanoTime() - t0;
+        batches.increment();
+        batchNanos.add(elapsed);
+        progress.record(elapsed / 1000);
+    }
+
+    // Avanzamento di un singolo cambio partita
+    private class Progress {
+        final long startMillis = System.currentTimeMillis();
+        final AtomicInteger remaining;
+        long maxMicros; // aggiornato solo dal thread del timer
+
+        Progress(int batches) {
+            this.remaining = new AtomicInteger(batches);
+        }
+
+        void record(long micros) {
+            maxMicros = Math.max(maxMicros, micros);
+            if (remaining.decrementAndGet() == 0) {
+                lastMaxBatchMicros = maxMicros;
+                lastSpanMillis = System.currentTimeMillis() - startMillis;
+            }
+        }
+    }
+
+    // Riepilogo testuale per i comandi admin
+    public String describe() {
+        long b = batches.sum();
+        return "Cambi partita: " + rollovers.sum()
+            + " lotti=" + b
+            + " sessioni=" + sessions.sum()
+            + " media lotto=" + (b > 0 ? batchNanos.sum() / b / 1000 : 0) + "us"
+            + " ultimo: max lotto=" + lastMaxBatchMicros + "us durata=" + lastSpanMillis + "ms";
+    }
+}
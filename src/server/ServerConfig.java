@@ -10,10 +10,35 @@ public class ServerConfig {
     public static String DATA_FILE_PATH;
     public static String USERS_FILE_PATH;
     public static String HISTORY_FILE_PATH;
+    public static String HISTORY_DIR;
+    public static String PUZZLE_ORDER;
+    public static String ROTATION_STATE_PATH;
+    public static int HISTORY_CACHE_SIZE;
     public static int GAME_DURATION;
+    public static int ROOMS;
+    public static int ROOM_STAGGER_SECONDS;
+    public static long ROLLOVER_WINDOW_MILLIS;
+    public static int ROLLOVER_BATCH_SIZE;
+    public static int PREWARM_LEAD_SECONDS;
     public static int MAX_ERRORS;
     public static boolean TEST_MODE;
     public static String ADMIN_PASSWORD; 
+    public static int SELECTOR_THREADS;
+    public static int MAX_OUTBOUND_BYTES;
+    public static int MAX_FRAME_SIZE;
+    public static int BUFFER_POOL_MAX_PER_CLASS;
+    public static int UDP_SEND_BUFFER;
+    public static int MAX_IN_FLIGHT_PER_SESSION;
+    public static String WORKER_MODE;
+    public static int WORKER_SHUTDOWN_SECONDS;
+    public static int SAVE_INTERVAL_SECONDS;
+    public static int USER_FLUSH_THRESHOLD;
+    public static String JOURNAL_DIR;
+    public static long JOURNAL_SEGMENT_BYTES;
+    public static int JOURNAL_SYNC_MILLIS;
+    public static int LEADERBOARD_SIZE;
+    public static int MATCH_RANKING_SIZE;
+    public static long LEADERBOARD_REFRESH_MILLIS;
 
     public static void load(String configFile) throws IOException {
         try (InputStream input = new FileInputStream(configFile)) {
@@ -30,13 +55,62 @@ public class ServerConfig {
                 DATA_FILE_PATH = prop.getProperty("dataFilePath", "data/Connections_Data.json");
             }
 
+            // Ordine dei puzzle (sequential | shuffle) e file con la posizione raggiunta
+            PUZZLE_ORDER = prop.getProperty("puzzleOrder", "sequential");
+            ROTATION_STATE_PATH = prop.getProperty("rotationStatePath", "data/rotation.properties");
+
             USERS_FILE_PATH = prop.getProperty("usersFilePath", "data/Users.json");
-            HISTORY_FILE_PATH = prop.getProperty("gamesFilePath", "data/GamesHistory.json");
+            HISTORY_FILE_PATH = prop.getProperty("gamesFilePath", "data/GamesHistory.json"); // solo per la migrazione
+            HISTORY_DIR = prop.getProperty("historyDir", "data/history");
+            // Partite dello storico tenute in memoria (LRU)
+            HISTORY_CACHE_SIZE = Math.max(1, Integer.parseInt(prop.getProperty("historyCacheSize", "32")));
             GAME_DURATION = Integer.parseInt(prop.getProperty("gameDuration", "60"));
             MAX_ERRORS = Integer.parseInt(prop.getProperty("maxErrors", "4"));
+
+            // Stanze con partite indipendenti e sfasamento (secondi) tra le fini dei loro round
+            ROOMS = Math.max(1, Integer.parseInt(prop.getProperty("rooms", "1")));
+            ROOM_STAGGER_SECONDS = Math.max(0, Integer.parseInt(prop.getProperty("roomStagger", String.valueOf(GAME_DURATION / ROOMS))));
+            // Cambio partita: notifiche a lotti di rolloverBatchSize sessioni distribuiti in rolloverWindowMillis
+            ROLLOVER_WINDOW_MILLIS = Math.max(0, Long.parseLong(prop.getProperty("rolloverWindowMillis", "2000")));
+            ROLLOVER_BATCH_SIZE = Math.max(1, Integer.parseInt(prop.getProperty("rolloverBatchSize", "200")));
+            // Secondi prima della fine del round in cui viene preparata la partita successiva
+            PREWARM_LEAD_SECONDS = Math.max(0, Integer.parseInt(prop.getProperty("prewarmLeadSeconds", "30")));
+
+            // Classifica: primi K tenuti in una copia a parte per /rank K (senza K la classifica è completa) e intervallo minimo tra due ricostruzioni
+            LEADERBOARD_SIZE = Math.max(1, Integer.parseInt(prop.getProperty("leaderboardSize", "10")));
+            LEADERBOARD_REFRESH_MILLIS = Long.parseLong(prop.getProperty("leaderboardRefreshMillis", "1000"));
+            // Giocatori nella classifica di fine partita (0 = tutti)
+            MATCH_RANKING_SIZE = Math.max(0, Integer.parseInt(prop.getProperty("matchRankingSize", "0")));
+
+            // Persistenza: intervallo di salvataggio e utenti modificati che fanno anticipare il salvataggio
+            SAVE_INTERVAL_SECONDS = Math.max(1, Integer.parseInt(prop.getProperty("saveInterval", "30")));
+            USER_FLUSH_THRESHOLD = Math.max(1, Integer.parseInt(prop.getProperty("userFlushThreshold", "1000")));
+
+            // Journal: cartella dei segmenti, dimensione massima di un segmento, intervallo del force() su disco
+            JOURNAL_DIR = prop.getProperty("journalDir", "data/journal");
+            JOURNAL_SEGMENT_BYTES = Long.parseLong(prop.getProperty("journalSegmentBytes", "4194304"));
+            JOURNAL_SYNC_MILLIS = Math.max(1, Integer.parseInt(prop.getProperty("journalSyncMillis", "100")));
             
             // Password Admin (Default "admin")
             ADMIN_PASSWORD = prop.getProperty("adminPassword", "admin");
+
+            // Rete: numero di selector che gestiscono le letture (default = numero di core)
+            int cores = Runtime.getRuntime().availableProcessors();
+            SELECTOR_THREADS = Math.max(1, Integer.parseInt(prop.getProperty("selectorThreads", String.valueOf(cores))));
+            // Byte massimi in coda di uscita per client prima di disconnetterlo
+            MAX_OUTBOUND_BYTES = Integer.parseInt(prop.getProperty("maxOutboundBytes", "1048576"));
+            // Dimensione massima di un singolo messaggio ricevuto
+            MAX_FRAME_SIZE = Integer.parseInt(prop.getProperty("maxFrameSize", "65536"));
+            // Buffer liberi massimi per ogni classe di dimensione del BufferPool
+            BUFFER_POOL_MAX_PER_CLASS = Integer.parseInt(prop.getProperty("bufferPoolMaxPerClass", "1024"));
+            // Buffer di invio del socket UDP usato per le notifiche
+            UDP_SEND_BUFFER = Integer.parseInt(prop.getProperty("udpSendBuffer", "1048576"));
+            // Richieste di un client in attesa del worker oltre le quali si smette di leggere dal suo socket
+            MAX_IN_FLIGHT_PER_SESSION = Math.max(1, Integer.parseInt(prop.getProperty("maxInFlightPerSession", "32")));
+            // Esecuzione delle richieste: fixed (un thread per core) o virtual (virtual thread, serve Java 21+)
+            WORKER_MODE = prop.getProperty("workerMode", "fixed");
+            // Secondi concessi ai worker per finire le richieste in corso all'arresto
+            WORKER_SHUTDOWN_SECONDS = Math.max(0, Integer.parseInt(prop.getProperty("workerShutdownSeconds", "5")));
         }
     }
 }
\ No newline at end of file
@@ -42,9 +42,9 @@ public class ServerMain {
 
         // Scheduler Gioco
         gameScheduler = new GameScheduler(networkService);
-        new Thread(gameScheduler).start();
+        gameScheduler.start();
 
-        // Listener Console (exit)
+        // Listener Console (exit, endround, settime)
         startConsoleListener();
         
         // Rete
@@ -59,11 +59,27 @@ public class ServerMain {
     private void startConsoleListener() {
         new Thread(() -> {
             try (Scanner s = new Scanner(System.in)) {
-                while (true) {
-                    if (s.hasNextLine() && "exit".equalsIgnoreCase(s.nextLine().trim())) {
+                while (s.hasNextLine()) {
+                    String[] cmd = s.nextLine().trim().split("\\s+");
+                    if ("exit".equalsIgnoreCase(cmd[0])) {
                         // Chiudo tutto centralmente con close()
                         close(); 
                         break;
+                    } else if ("endround".equalsIgnoreCase(cmd[0])) {
+                        // Termina subito la partita in corso (di una stanza o di tutte) e passa alla successiva
+                        try {
+                            gameScheduler.endRoundNow(cmd.length > 1 ? Integer.parseInt(cmd[1]) : -1);
+                        } catch (NumberFormatException e) {
+                            ServerLogger.error("Uso: endround [stanza]");
+                        }
+                    } else if ("settime".equalsIgnoreCase(cmd[0]) && cmd.length >= 2) {
+                        // Nuova durata residua (secondi) della partita in corso
+                        try {
+                            int room = cmd.length > 2 ? Integer.parseInt(cmd[2]) : -1;
+                            gameScheduler.reschedule(room, Math.max(0, Integer.parseInt(cmd[1])));
+                        } catch (NumberFormatException e) {
+                            ServerLogger.error("Uso: settime <secondi> [stanza]");
+                        }
                     }
                 }
             } catch (Exception e) {
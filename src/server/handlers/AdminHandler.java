@@ -1,15 +1,17 @@
 package server.handlers;
 
+import server.RolloverFanout;
 import server.ServerConfig;
 import server.models.ClientSession;
-import server.models.Game;
 import server.models.GameMatch;
+import server.network.BufferPool;
+import server.network.UdpSender;
 import server.services.GameManager;
+import server.services.Journal;
 import server.services.UserManager;
 import utils.ClientRequest;
 import utils.ResponseCodes;
 import utils.ServerResponse;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -21,30 +23,40 @@ public class AdminHandler {
         return ServerConfig.ADMIN_PASSWORD.equals(inputPsw);
     }
 
-    public static String handleOracle(ClientRequest.Oracle req, ClientSession session) {
+    public static ServerResponse handleOracle(ClientRequest.Oracle req, ClientSession session) {
         if (!checkAuth(req.password)) return ResponseUtils.error("Password Admin Errata", ResponseCodes.FORBIDDEN);
         
-        GameMatch match = GameManager.getInstance().getCurrentMatch();
+        GameMatch match = GameManager.getInstance().getCurrentMatch(session);
         if (match == null) return ResponseUtils.error("Nessuna partita attiva", 404);
 
-        // lista dei gruppi
-        List<ServerResponse.GroupData> groups = new ArrayList<>();
-        for (Game.Group g : match.getGameData().getGroups()) {
-            groups.add(new ServerResponse.GroupData(g.getTheme(), g.getWords()));
-        }
-        
-        // risposta
+        // risposta, la lista dei gruppi è già serializzata nel match
         ServerResponse.AdminInfo resp = new ServerResponse.AdminInfo();
-        resp.oracleData = groups; // Assegniamo la lista al campo specifico
+        resp.oracleData = ResponseUtils.buildSolution(match); // Assegniamo la lista al campo specifico
         resp.message = "Soluzione  Oracle";
         
-        return ResponseUtils.toJson(resp);
+        return resp;
     }
 
-    public static String handleGod(ClientRequest.God req) {
+    public static ServerResponse handleGod(ClientRequest.God req) {
         if (!checkAuth(req.password)) return ResponseUtils.error("Password Admin Errata", ResponseCodes.FORBIDDEN);
         
         List<ServerResponse.UserAccountInfo> users = UserManager.getInstance().getUserListDebug();
-        return ResponseUtils.toJson(new ServerResponse.AdminInfo(users));
+        return new ServerResponse.AdminInfo(users);
+    }
+
+    // Contatori interni del server (pool dei buffer di rete, ...)
+    public static ServerResponse handleServerStats(ClientRequest.ServerStats req) {
+        if (!checkAuth(req.password)) return ResponseUtils.error("Password Admin Errata", ResponseCodes.FORBIDDEN);
+
+        ServerResponse.AdminInfo resp = new ServerResponse.AdminInfo();
+        resp.message = "Statistiche Server";
+        resp.adminPayload = BufferPool.getInstance().describe()
+            + "\n" + UdpSender.getInstance().describe()
+            + "\n" + UserManager.getInstance().describePersistence()
+            + "\n" + Journal.getInstance().describe()
+            + "\n" + UserManager.getInstance().describeLeaderboard()
+            + "\n" + GameManager.getInstance().describeHistory()
+            + "\n" + RolloverFanout.getInstance().describe();
+        return resp;
     }
 }
\ No newline at end of file
@@ -14,7 +14,7 @@ import utils.ServerResponse;
  */
 public class AuthHandler {
 
-    public static String handleRegister(ClientRequest.Register req, ClientSession session) {
+    public static ServerResponse handleRegister(ClientRequest.Register req, ClientSession session) {
         if (req.name == null || req.psw == null) {
             return ResponseUtils.error("Dati mancanti", 400);
         }
@@ -32,7 +32,7 @@ public class AuthHandler {
         }
     }
 
-    public static String handleLogin(ClientRequest.Login req, ClientSession session) {
+    public static ServerResponse handleLogin(ClientRequest.Login req, ClientSession session) {
         if (session.isLoggedIn()) {
             return ResponseUtils.error("Già loggato", 405);
         }
@@ -45,7 +45,7 @@ public class AuthHandler {
         return ResponseUtils.error("Credenziali errate", 401);
     }
 
-    public static String handleLogout(ClientSession session) {
+    public static ServerResponse handleLogout(ClientSession session) {
         if (!session.isLoggedIn()) {
             return ResponseUtils.error("Non eri loggato", 401);
         }
@@ -55,11 +55,12 @@ public class AuthHandler {
         session.setLoggedIn(false);
         session.setUsername(null);
         session.setUdpPort(0);
+        session.setRoom(null);
         
         return ResponseUtils.success("Logout effettuato");
     }
     
-    public static String handleUpdateCredentials(ClientRequest.UpdateCredentials req) {
+    public static ServerResponse handleUpdateCredentials(ClientRequest.UpdateCredentials req) {
         boolean ok = UserManager.getInstance().updateCredentials(req.oldName, req.newName, req.oldPsw, req.newPsw);
         
         if (ok) {
@@ -71,14 +72,15 @@ public class AuthHandler {
 
     // --- HELPER PRIVATO PER NON DUPLICARE CODICE ---
     
-    private static String completeLoginProcess(ClientSession session, String username, int udpPort, String successMessage) {
+    private static ServerResponse completeLoginProcess(ClientSession session, String username, int udpPort, String successMessage) {
         // 1. Setup Sessione
         session.setUsername(username);
         session.setLoggedIn(true);
         if (udpPort > 0) session.setUdpPort(udpPort);
+        session.setRoom(GameManager.getInstance().roomFor(username));
 
-        // 2. Controllo Partita Attiva
-        GameMatch currentMatch = GameManager.getInstance().getCurrentMatch();
+        // 2. Controllo Partita Attiva nella stanza del giocatore
+        GameMatch currentMatch = GameManager.getInstance().getCurrentMatch(session);
         ServerResponse.GameInfoData infoData = null;
         
         if (currentMatch != null) {
@@ -86,10 +88,10 @@ public class AuthHandler {
             PlayerGameState pState = currentMatch.getOrCreatePlayerState(username);
             
             // Costruiamo l'oggetto GameInfoData usando la Factory in ResponseUtils
-            infoData = ResponseUtils.buildGameInfo(currentMatch, pState);
+            infoData = ResponseUtils.buildGameInfo(currentMatch, username, pState);
         }
         
         // 3. Risposta Finale (Auth + eventuale GameInfo)
-        return ResponseUtils.toJson(new ServerResponse.Auth(successMessage, infoData));
+        return new ServerResponse.Auth(successMessage, infoData);
     }
 }
\ No newline at end of file
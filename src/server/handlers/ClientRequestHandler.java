@@ -1,62 +1,95 @@
 package server.handlers;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
 import server.models.ClientSession;
+import server.models.GameMatch;
+import server.models.PlayerGameState;
+import server.services.GameManager;
+import utils.BinaryCodec;
 import utils.ClientRequest;
+import utils.ClientRequestAdapterFactory;
 import utils.ResponseCodes;
+import utils.ServerResponse;
+
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * smista le varie richieste agli handler
  */
 public class ClientRequestHandler {
-    private static final Gson gson = new Gson();
+    // Una sola passata in streaming: la factory sceglie la sottoclasse in base a "operation"
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapterFactory(new ClientRequestAdapterFactory())
+            .create();
 
-    public static String handleRequest(String jsonInput, ClientSession session) {
+    // Richiesta JSON (una riga di testo)
+    public static ServerResponse handleRequest(String jsonInput, ClientSession session) {
         if (jsonInput == null || jsonInput.isEmpty()) return ResponseUtils.error("Richiesta vuota", ResponseCodes.BAD_REQUEST);
 
         try {
-            JsonObject root = JsonParser.parseString(jsonInput).getAsJsonObject();
-            if (!root.has("operation")) return ResponseUtils.error("Campo 'operation' mancante", ResponseCodes.BAD_REQUEST);
+            ClientRequest req = gson.fromJson(jsonInput, ClientRequest.class);
+            if (req == null) return ResponseUtils.error("Richiesta vuota", ResponseCodes.BAD_REQUEST);
+            return dispatch(req, session);
+        } catch (JsonSyntaxException e) {
+            return ResponseUtils.error("JSON malformato", ResponseCodes.BAD_REQUEST);
+        } catch (JsonParseException e) {
+            // operation mancante o sconosciuta
+            return ResponseUtils.error(e.getMessage(), ResponseCodes.BAD_REQUEST);
+        }
+    }
 
-            String op = root.get("operation").getAsString();
+    // Richiesta binaria: le parole proposte possono essere indici nella griglia del giocatore
+    public static ClientRequest decodeBinary(byte[] payload, ClientSession session) {
+        return BinaryCodec.decodeRequest(ByteBuffer.wrap(payload), gameId -> playerGrid(session, gameId));
+    }
 
-            switch (op) {
+    private static List<String> playerGrid(ClientSession session, int gameId) {
+        GameMatch match = GameManager.getInstance().getCurrentMatch(session);
+        if (match == null || match.getGameId() != gameId || session.getUsername() == null) return null;
+        PlayerGameState state = match.getPlayerState(session.getUsername());
+        return (state != null) ? match.getShuffledWords(state) : null;
+    }
+
+    public static ServerResponse dispatch(ClientRequest req, ClientSession session) {
+        try {
+            switch (req.operation) {
                 case "register":
-                    return AuthHandler.handleRegister(gson.fromJson(jsonInput, ClientRequest.Register.class), session);
+                    return AuthHandler.handleRegister((ClientRequest.Register) req, session);
                 case "login":
-                    return AuthHandler.handleLogin(gson.fromJson(jsonInput, ClientRequest.Login.class), session);
+                    return AuthHandler.handleLogin((ClientRequest.Login) req, session);
                 case "logout":
                     return AuthHandler.handleLogout(session);
                 case "updateCredentials":
-                    return AuthHandler.handleUpdateCredentials(gson.fromJson(jsonInput, ClientRequest.UpdateCredentials.class));
+                    return AuthHandler.handleUpdateCredentials((ClientRequest.UpdateCredentials) req);
                 case "submitProposal":
-                    return GameHandler.handleSubmitProposal(gson.fromJson(jsonInput, ClientRequest.SubmitProposal.class), session);
+                    return GameHandler.handleSubmitProposal((ClientRequest.SubmitProposal) req, session);
                 case "requestGameInfo":
-                    return InfoHandler.handleRequestGameInfo(gson.fromJson(jsonInput, ClientRequest.GameInfo.class), session);
+                    return InfoHandler.handleRequestGameInfo((ClientRequest.GameInfo) req, session);
                 case "requestGameStats":
-                    return StatsHandler.handleRequestGameStats(gson.fromJson(jsonInput, ClientRequest.RequestGameStats.class), session);
+                    return StatsHandler.handleRequestGameStats((ClientRequest.RequestGameStats) req, session);
                 case "requestPlayerStats":
                     return StatsHandler.handleRequestPlayerStats(session);
                 case "requestLeaderboard":
-                    return StatsHandler.handleRequestLeaderboard(gson.fromJson(jsonInput, ClientRequest.Leaderboard.class), session);
+                    return StatsHandler.handleRequestLeaderboard((ClientRequest.Leaderboard) req, session);
                 
                 // ADMIN
                 case "oracle":
-                    return AdminHandler.handleOracle(gson.fromJson(jsonInput, ClientRequest.Oracle.class), session);
+                    return AdminHandler.handleOracle((ClientRequest.Oracle) req, session);
                 case "god":
-                    return AdminHandler.handleGod(gson.fromJson(jsonInput, ClientRequest.God.class));
+                    return AdminHandler.handleGod((ClientRequest.God) req);
+                case "serverStats":
+                    return AdminHandler.handleServerStats((ClientRequest.ServerStats) req);
 
                 default:
-                    return ResponseUtils.error("Operazione sconosciuta: " + op, ResponseCodes.BAD_REQUEST);
+                    return ResponseUtils.error("Operazione sconosciuta: " + req.operation, ResponseCodes.BAD_REQUEST);
             }
-        } catch (JsonSyntaxException e) {
-            return ResponseUtils.error("JSON malformato", ResponseCodes.BAD_REQUEST);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseUtils.error("Errore interno server: " + e.getMessage(), ResponseCodes.INTERNAL_SERVER_ERROR);
         }
     }
-}
\ No newline at end of file
+}
@@ -3,7 +3,7 @@ package server.handlers;
 import server.ServerConfig;
 import server.models.ClientSession;
 import server.models.GameMatch;
-import server.models.Game;
+import server.models.CompiledGame;
 import server.models.PlayerGameState;
 import server.services.GameManager;
 import server.services.UserManager;
@@ -11,22 +11,20 @@ import utils.ClientRequest;
 import utils.ServerResponse;
 import utils.ResponseCodes; 
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * gestisce la logica di gopcp
  */
 public class GameHandler {
 
-    public static String handleSubmitProposal(ClientRequest.SubmitProposal req, ClientSession session) {
+    public static ServerResponse handleSubmitProposal(ClientRequest.SubmitProposal req, ClientSession session) {
         if (!session.isLoggedIn()) 
             return ResponseUtils.error("Non loggato", ResponseCodes.UNAUTHORIZED);
         if (req.words == null || req.words.size() != 4) 
             return ResponseUtils.error("Servono 4 parole", ResponseCodes.BAD_REQUEST);
 
-        GameMatch match = GameManager.getInstance().getCurrentMatch();
+        GameMatch match = GameManager.getInstance().getCurrentMatch(session);
         if (match == null) return ResponseUtils.error("Nessuna partita attiva", ResponseCodes.INTERNAL_SERVER_ERROR);
         if (match.getTimeLeft() <= 0) return ResponseUtils.error("Tempo scaduto", ResponseCodes.TIMEOUT);
 
@@ -36,82 +34,76 @@ public class GameHandler {
         return processProposal(req.words, session, match, state);
     }
 
-    private static String processProposal(List<String> userWords, ClientSession session, GameMatch match, PlayerGameState state) {
-        List<String> normalized = userWords.stream().map(String::toUpperCase).collect(Collectors.toList());
-        Game.Group[] groups = match.getGameData().getGroups().toArray(new Game.Group[0]); 
-        
+    // Quattro lookup nella mappa parola -> indice e un confronto tra maschere di bit
+    private static ServerResponse processProposal(List<String> userWords, ClientSession session, GameMatch match, PlayerGameState state) {
+        CompiledGame game = match.getCompiled();
+
         // Validazione esistenza parole
-        List<String> allGameWords = new ArrayList<>();
-        for(Game.Group g : groups) allGameWords.addAll(g.getWords());
-        if (!allGameWords.containsAll(normalized)) return ResponseUtils.error("Parole non valide.", ResponseCodes.INVALID_WORDS);
-        
-        // Validazione duplicati
-        for (String theme : state.getGuessedThemes()) {
-            for (Game.Group g : groups) {
-                if (g.getTheme().equals(theme)) {
-                    for (String w : normalized) {
-                        if (g.getWords().contains(w)) return ResponseUtils.error("Parola già usata: " + theme, ResponseCodes.DUPLICATE_GUESS);
-                    }
-                }
-            }
+        int proposal = 0;
+        for (String w : userWords) {
+            int idx = game.indexOf(w);
+            if (idx < 0) return ResponseUtils.error("Parole non valide.", ResponseCodes.INVALID_WORDS);
+            proposal |= 1 << idx;
         }
         
-        // Logica 
-        boolean found = false;
-        Game.Group foundGroup = null;
+        int foundGroup = game.groupOf(proposal);
 
-        for (Game.Group group : groups) {
-            if (state.isThemeGuessed(group.getTheme())) continue;
-            if (group.getWords().containsAll(normalized) && normalized.containsAll(group.getWords())) {
-                found = true;
-                foundGroup = group;
-                break;
+        // Transizione atomica: rileggo lo stato e riprovo se un'altra richiesta
+        // dello stesso giocatore l'ha cambiato nel frattempo
+        int current, next;
+        boolean isFinished;
+        do {
+            current = state.snapshot();
+            if (PlayerGameState.isFinished(current)) {
+                return ResponseUtils.error("Hai già terminato la partita", ResponseCodes.GAME_FINISHED);
             }
-        }
 
-        boolean isCorrect = false;
-        String groupTitle = null;
+            // Validazione duplicati: parole di gruppi già indovinati
+            int used = proposal & game.wordsOfGroups(PlayerGameState.guessedGroups(current));
+            if (used != 0) {
+                String theme = game.getTheme(game.groupOfWord(Integer.numberOfTrailingZeros(used)));
+                return ResponseUtils.error("Parola già usata: " + theme, ResponseCodes.DUPLICATE_GUESS);
+            }
+
+            // Logica: la proposta è giusta se la maschera coincide con quella di un gruppo
+            if (foundGroup >= 0) {
+                next = PlayerGameState.withGroup(current, foundGroup);
+                // LOGICA VITTORIA CENTRALIZZATA
+                isFinished = Integer.bitCount(PlayerGameState.guessedGroups(next)) == 3;
+            } else {
+                next = PlayerGameState.withError(current);
+                // LOGICA SCONFITTA CENTRALIZZATA
+                isFinished = PlayerGameState.errors(next) > ServerConfig.MAX_ERRORS;
+            }
+            if (isFinished) next = PlayerGameState.finish(next, foundGroup >= 0);
+        } while (!state.compareAndSet(current, next));
+
+        boolean isCorrect = foundGroup >= 0;
+        String groupTitle = isCorrect ? game.getTheme(foundGroup) : null;
         String message;
-        boolean isFinished = false;
+        if (isCorrect) message = isFinished ? "VITTORIA!" : "Gruppo Trovato!";
+        else message = isFinished ? "HAI PERSO (Troppi errori)" : "Sbagliato.";
 
-        if (found) {
-             state.addGuessedTheme(foundGroup.getTheme());
-             isCorrect = true;
-             groupTitle = foundGroup.getTheme();
-             message = "Gruppo Trovato!";
-             
-             // LOGICA VITTORIA CENTRALIZZATA
-             if (state.getGroupsFoundCount() == 3) {
-                 finishGame(session, state, true); 
-                 message = "VITTORIA!";
-                 isFinished = true;
-             }
+        // solo la richiesta che ha chiuso la partita aggiorna le statistiche
+        if (isFinished) {
+            match.onPlayerFinished(session.getUsername(), state, next);
+            finishGame(session, next);
         } else {
-             state.incrementErrors();
-             isCorrect = false;
-             message = "Sbagliato.";
-             
-             // LOGICA SCONFITTA CENTRALIZZATA
-             if (state.getErrors() > ServerConfig.MAX_ERRORS) {
-                 finishGame(session, state, false); 
-                 message = "HAI PERSO (Troppi errori)";
-                 isFinished = true;
-             }
+            match.onStateChanged(session.getUsername(), state);
         }
         
-        ServerResponse.Proposal resp = new ServerResponse.Proposal(isCorrect, groupTitle, state.getScore());
+        ServerResponse.Proposal resp = new ServerResponse.Proposal(isCorrect, groupTitle, PlayerGameState.score(next));
         resp.message = message;
         if (isFinished) {
             resp.isFinished = true;
-            resp.solution = ResponseUtils.buildSolution(match.getGameData());
+            resp.solution = ResponseUtils.buildSolution(match);
         }
 
-        return ResponseUtils.toJson(resp);
+        return resp;
     }
     
-    private static void finishGame(ClientSession session, PlayerGameState state, boolean won) {
-        state.setFinished(true);
-        state.setWon(won); 
-        UserManager.getInstance().updateGameResult(session.getUsername(), state.getScore(), state.getErrors(), won);
+    private static void finishGame(ClientSession session, int finalState) {
+        UserManager.getInstance().updateGameResult(session.getUsername(),
+            PlayerGameState.score(finalState), PlayerGameState.errors(finalState), PlayerGameState.hasWon(finalState));
     }
-}
\ No newline at end of file
+}
@@ -5,15 +5,16 @@ import server.models.GameMatch;
 import server.models.PlayerGameState;
 import server.services.GameManager;
 import utils.ClientRequest;
+import utils.ServerResponse;
 
 public class InfoHandler {
 
-    public static String handleRequestGameInfo(ClientRequest.GameInfo req, ClientSession session) {
+    public static ServerResponse handleRequestGameInfo(ClientRequest.GameInfo req, ClientSession session) {
         if (!session.isLoggedIn())
             return ResponseUtils.error("Non loggato", 401);
 
         GameManager manager = GameManager.getInstance();
-        GameMatch current = manager.getCurrentMatch();
+        GameMatch current = manager.getCurrentMatch(session);
 
         int targetId;
 
@@ -29,7 +30,8 @@ public class InfoHandler {
             targetId = req.gameId;
         }
 
-        GameMatch match = manager.getGameMatchById(targetId);
+        // la partita in corso nella stanza del giocatore ha la precedenza (un'altra stanza può giocare lo stesso ID)
+        GameMatch match = (current != null && current.getGameId() == targetId) ? current : manager.getGameMatchById(targetId);
 
         if (match == null) {
             return ResponseUtils.error("Partita " + targetId + " non trovata.", 404);
@@ -42,6 +44,6 @@ public class InfoHandler {
             pState = match.getOrCreatePlayerState(session.getUsername());
         }
 
-        return ResponseUtils.toJson(ResponseUtils.buildGameInfo(match, pState));
+        return ResponseUtils.buildGameInfo(match, session.getUsername(), pState);
     }
 }
\ No newline at end of file
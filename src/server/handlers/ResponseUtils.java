@@ -1,23 +1,28 @@
 package server.handlers;
 
 import com.google.gson.Gson;
-import server.models.Game;
+import com.google.gson.GsonBuilder;
+import server.ServerConfig;
 import server.models.GameMatch;
 import server.models.PlayerGameState;
+import utils.PreSerializedAdapterFactory;
 import utils.ServerResponse;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class ResponseUtils {
-    private static final Gson gson = new Gson();
+    // Le PreSerializedList (soluzione, gruppi) vengono copiate nel JSON senza riserializzarle
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapterFactory(new PreSerializedAdapterFactory())
+            .create();
 
-    public static String error(String msg, int code) { return gson.toJson(new ServerResponse.Error(msg, code)); }
-    public static String success(String msg) { return gson.toJson(new ServerResponse.Generic(msg)); }
+    public static ServerResponse error(String msg, int code) { return new ServerResponse.Error(msg, code); }
+    public static ServerResponse success(String msg) { return new ServerResponse.Generic(msg); }
     public static String toJson(Object resp) { return gson.toJson(resp); }
 
-    public static ServerResponse.GameInfoData buildGameInfo(GameMatch match, PlayerGameState pState) {
+    // username: destinatario della risposta, la sua voce resta nella classifica finale anche se tagliata
+    public static ServerResponse.GameInfoData buildGameInfo(GameMatch match, String username, PlayerGameState pState) {
         ServerResponse.GameInfoData resp = new ServerResponse.GameInfoData("OK");
         
         resp.gameId = match.getGameId();
@@ -31,13 +36,9 @@ public class ResponseUtils {
             // LOGICA RIMOSSA: Leggiamo direttamente dallo stato
             resp.isWinner = pState.hasWon(); 
             
-            resp.words = pState.getShuffledWords();
-            resp.correctGroups = new ArrayList<>();
-            for (Game.Group gr : match.getGameData().getGroups()) {
-                if (pState.isThemeGuessed(gr.getTheme())) {
-                    resp.correctGroups.add(new ServerResponse.GroupData(gr.getTheme(), gr.getWords()));
-                }
-            }
+            resp.words = match.getShuffledWords(pState);
+
+            resp.correctGroups = match.getPayloads().getCorrectGroups(pState.getGuessedGroups());
         } else {
             resp.mistakes = 0;
             resp.currentScore = 0;
@@ -49,34 +50,26 @@ public class ResponseUtils {
         }
 
         if (Boolean.TRUE.equals(resp.isFinished)) {
-            resp.solution = buildSolution(match.getGameData());
-            resp.playerResults = buildMatchRanking(match);
+            resp.solution = buildSolution(match);
+            resp.playerResults = buildMatchRanking(match, username);
         }
 
         return resp;
     }
 
-    public static List<ServerResponse.GroupData> buildSolution(Game game) {
-        List<ServerResponse.GroupData> solution = new ArrayList<>();
-        if (game != null) {
-            for (Game.Group gr : game.getGroups()) {
-                solution.add(new ServerResponse.GroupData(gr.getTheme(), gr.getWords()));
-            }
-        }
-        return solution;
+    public static List<ServerResponse.GroupData> buildSolution(GameMatch match) {
+        if (match == null) return new ArrayList<>();
+        return match.getPayloads().getSolution();
     }
 
-    public static List<ServerResponse.PlayerResult> buildMatchRanking(GameMatch match) {
-        List<ServerResponse.PlayerResult> results = new ArrayList<>();
-        for (Map.Entry<String, PlayerGameState> entry : match.getPlayers().entrySet()) {
-            PlayerGameState ps = entry.getValue();
-            
-            results.add(new ServerResponse.PlayerResult(
-                entry.getKey(), 
-                ps.getScore(), 
-                ps.hasWon()
-            ));
+    // Classifica della partita già ordinata: tutta (MATCH_RANKING_SIZE = 0) o i primi MATCH_RANKING_SIZE,
+    // più in fondo la voce del giocatore se non è tra questi
+    public static List<ServerResponse.PlayerResult> buildMatchRanking(GameMatch match, String username) {
+        List<ServerResponse.PlayerResult> ranking = match.getStats().top(ServerConfig.MATCH_RANKING_SIZE);
+        if (ServerConfig.MATCH_RANKING_SIZE > 0 && ranking.size() == ServerConfig.MATCH_RANKING_SIZE && username != null) {
+            ServerResponse.PlayerResult own = match.getStats().entryOf(username);
+            if (own != null && !ranking.contains(own)) ranking.add(own);
         }
-        return results;
+        return ranking;
     }
 }
\ No newline at end of file
@@ -12,13 +12,13 @@ import utils.ResponseCodes;
 public class StatsHandler {
 
     // Gestione Statistiche Partita (/gs)
-    public static String handleRequestGameStats(ClientRequest.RequestGameStats req, ClientSession session) {
+    public static ServerResponse handleRequestGameStats(ClientRequest.RequestGameStats req, ClientSession session) {
         if (!session.isLoggedIn()) return ResponseUtils.error("Non loggato", ResponseCodes.UNAUTHORIZED);
         
         // FIX: Rimosso "|| req.gameId == 0".
         // Se req.gameId è null, prendiamo la corrente. Se è 0, prendiamo la 0.
         GameMatch match = (req.gameId == null) 
-            ? GameManager.getInstance().getCurrentMatch()
+            ? GameManager.getInstance().getCurrentMatch(session)
             : GameManager.getInstance().getGameMatchById(req.gameId);
 
         if (match == null) return ResponseUtils.error("Partita non trovata", ResponseCodes.NOT_FOUND);
@@ -33,11 +33,11 @@ public class StatsHandler {
         resp.playersWon = snap.won;
         resp.averageScore = snap.averageScore;
         
-        return ResponseUtils.toJson(resp);
+        return resp;
     }
 
     // Gestione Statistiche Personali (/me)
-    public static String handleRequestPlayerStats(ClientSession session) {
+    public static ServerResponse handleRequestPlayerStats(ClientSession session) {
         if (!session.isLoggedIn()) return ResponseUtils.error("Non loggato", ResponseCodes.UNAUTHORIZED);
         
         User user = UserManager.getInstance().getUser(session.getUsername());
@@ -58,10 +58,10 @@ public class StatsHandler {
                 resp.perfectPuzzles = resp.mistakeHistogram[0];
             }
         }
-        return ResponseUtils.toJson(resp);
+        return resp;
     }
 
-    public static String handleRequestLeaderboard(ClientRequest.Leaderboard req, ClientSession session) {
+    public static ServerResponse handleRequestLeaderboard(ClientRequest.Leaderboard req, ClientSession session) {
         if (!session.isLoggedIn()) return ResponseUtils.error("Non loggato", ResponseCodes.UNAUTHORIZED);
         
         var ranking = UserManager.getInstance().getLeaderboard(req.topPlayers, req.playerName);
@@ -71,6 +71,6 @@ public class StatsHandler {
         }
 
         ServerResponse.Leaderboard resp = new ServerResponse.Leaderboard(ranking);
-        return ResponseUtils.toJson(resp);
+        return resp;
     }
 }
\ No newline at end of file
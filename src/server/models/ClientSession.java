@@ -1,9 +1,13 @@
 package server.models;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.util.Collections;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClientSession {
     // Dati di connessione
@@ -11,17 +15,50 @@ public class ClientSession {
     private String username;
     private InetAddress clientAddress; 
     private int udpPort;
-    private StringBuilder buffer;
+    private volatile InetSocketAddress udpAddress; // destinazione delle notifiche, calcolata al login
+    private volatile Room room; // stanza assegnata al login
+
+    // Buffer di ricezione preso dal BufferPool (in modalità scrittura): contiene il messaggio incompleto
+    private ByteBuffer inboundBuffer;
+    private int scanOffset;       // byte già esaminati in cerca di '\n'
+    private boolean discarding;   // sto scartando un messaggio troppo lungo
+
+    // Protocollo scelto dal client al primo byte: JSON a righe o binario
+    private boolean protocolNegotiated;
+    private volatile boolean binaryProtocol;
 
     private SelectionKey selectionKey;
     public void setSelectionKey(SelectionKey key) { this.selectionKey = key; }
     public SelectionKey getSelectionKey() { return selectionKey; }
 
+    // indice del SelectorLoop che possiede la connessione
+    private int loopIndex;
+    public void setLoopIndex(int loopIndex) { this.loopIndex = loopIndex; }
+    public int getLoopIndex() { return loopIndex; }
+
+    // Coda di uscita: risposte già codificate, le svuota il SelectorLoop su OP_WRITE
+    private final Queue<ByteBuffer> outboundQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outboundBytes = new AtomicInteger();
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+
+    public Queue<ByteBuffer> getOutboundQueue() { return outboundQueue; }
+    public int getOutboundBytes() { return outboundBytes.get(); }
+    public int addOutboundBytes(int delta) { return outboundBytes.addAndGet(delta); }
+    public AtomicBoolean getWriteRequested() { return writeRequested; }
+
+    // Coda di ingresso: richieste in attesa del worker, eseguite in ordine da SessionDispatcher
+    private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingRequests = new AtomicInteger(); // in coda + in esecuzione
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    public Queue<Runnable> getInbox() { return inbox; }
+    public AtomicInteger getPendingRequests() { return pendingRequests; }
+    public AtomicBoolean getDraining() { return draining; }
+
     // RIFERIMENTO DIRETTO ALLO STATO DI GIOCO (Proxy pattern)
     private PlayerGameState state;
 
     public ClientSession() {
-        this.buffer = new StringBuilder();
         this.isLoggedIn = false;
     }
 
@@ -35,50 +72,53 @@ public class ClientSession {
         this.state = null;
     }
 
-    public Set<String> getGuessedThemes() {
-        if (state != null) return state.getGuessedThemes();
-        return Collections.emptySet(); // Ritorna set vuoto per sicurezza
+    public int getGuessedGroups() {
+        return (state != null) ? state.getGuessedGroups() : 0;
     }
 
     public int getErrors() {
         return (state != null) ? state.getErrors() : 0;
     }
 
-    public void incrementErrors() {
-        if (state != null) state.incrementErrors();
-    }
-
     public int getScore() {
         return (state != null) ? state.getScore() : 0;
     }
 
-    public boolean isThemeGuessed(String theme) {
-        return state != null && state.getGuessedThemes().contains(theme);
+    public boolean isGroupGuessed(int group) {
+        return state != null && state.isGroupGuessed(group);
     }
 
-    public void addGuessedTheme(String theme) {
-        if (state != null) state.addGuessedTheme(theme);
-    }
-    
     public boolean isGameFinished() {
         return state != null && state.isFinished();
     }
 
-    public void setGameFinished(boolean finished) {
-        if (state != null) state.setFinished(finished);
-    }
-
     public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
     
     public boolean isLoggedIn() { return isLoggedIn; }
     public void setLoggedIn(boolean loggedIn) { isLoggedIn = loggedIn; }
     
-    public StringBuilder getBuffer() { return buffer; }
+    public ByteBuffer getInboundBuffer() { return inboundBuffer; }
+    public void setInboundBuffer(ByteBuffer inboundBuffer) { this.inboundBuffer = inboundBuffer; }
+    public int getScanOffset() { return scanOffset; }
+    public void setScanOffset(int scanOffset) { this.scanOffset = scanOffset; }
+    public boolean isProtocolNegotiated() { return protocolNegotiated; }
+    public void setProtocolNegotiated(boolean negotiated) { this.protocolNegotiated = negotiated; }
+    public boolean isBinaryProtocol() { return binaryProtocol; }
+    public void setBinaryProtocol(boolean binary) { this.binaryProtocol = binary; }
+    public boolean isDiscarding() { return discarding; }
+    public void setDiscarding(boolean discarding) { this.discarding = discarding; }
     
     public InetAddress getClientAddress() { return clientAddress; }
     public void setClientAddress(InetAddress clientAddress) { this.clientAddress = clientAddress; }
     
     public int getUdpPort() { return udpPort; }
-    public void setUdpPort(int udpPort) { this.udpPort = udpPort; }
+    public void setUdpPort(int udpPort) {
+        this.udpPort = udpPort;
+        this.udpAddress = (udpPort > 0 && clientAddress != null) ? new InetSocketAddress(clientAddress, udpPort) : null;
+    }
+    public InetSocketAddress getUdpAddress() { return udpAddress; }
+
+    public Room getRoom() { return room; }
+    public void setRoom(Room room) { this.room = room; }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package server.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forma "compilata" di un Game, costruita una volta per partita:
+ * ogni parola ha un indice canonico (ordine dei gruppi nel file) e ogni gruppo
+ * una maschera di bit sulle sue parole. Una proposta diventa una maschera
+ * e si confronta con quelle dei gruppi senza scorrere liste.
+ */
+public class CompiledGame {
+    private final Map<String, Integer> wordIndex = new HashMap<>();
+    private final List<String> words;     // parole in ordine canonico
+    private final int[] wordGroup;        // indice parola -> gruppo
+    private final int[] groupMasks;       // gruppo -> maschera delle sue parole
+    private final String[] themes;
+
+    public CompiledGame(Game game) {
+        List<Game.Group> groups = game.getGroups();
+        List<String> all = new ArrayList<>();
+        for (Game.Group g : groups) all.addAll(g.getWords());
+        // la griglia di PlayerGameState usa 4 bit per parola
+        if (all.size() > 16) throw new IllegalArgumentException("Troppe parole nel game " + game.getGameId());
+
+        words = Collections.unmodifiableList(all);
+        wordGroup = new int[all.size()];
+        groupMasks = new int[groups.size()];
+        themes = new String[groups.size()];
+
+        int idx = 0;
+        for (int g = 0; g < groups.size(); g++) {
+            themes[g] = groups.get(g).getTheme();
+            for (String w : groups.get(g).getWords()) {
+                wordIndex.put(w.toUpperCase(), idx);
+                wordGroup[idx] = g;
+                groupMasks[g] |= 1 << idx;
+                idx++;
+            }
+        }
+    }
+
+    // Indice canonico della parola (maiuscole/minuscole ignorate), -1 se non è nella griglia
+    public int indexOf(String word) {
+        if (word == null) return -1;
+        Integer idx = wordIndex.get(word);
+        if (idx == null) idx = wordIndex.get(word.toUpperCase());
+        return (idx != null) ? idx : -1;
+    }
+
+    // Gruppo che ha esattamente queste parole, -1 se nessuno
+    public int groupOf(int wordMask) {
+        if (wordMask == 0) return -1;
+        int g = wordGroup[Integer.numberOfTrailingZeros(wordMask)];
+        return (groupMasks[g] == wordMask) ? g : -1;
+    }
+
+    // Unione delle parole dei gruppi nella maschera (bit i = gruppo i)
+    public int wordsOfGroups(int groupMask) {
+        int result = 0;
+        for (int g = 0; g < groupMasks.length; g++) {
+            if ((groupMask & (1 << g)) != 0) result |= groupMasks[g];
+        }
+        return result;
+    }
+
+    // Maschera dei gruppi con questi temi (per convertire i vecchi stati salvati)
+    public int groupMaskOfThemes(Iterable<String> names) {
+        int mask = 0;
+        for (String name : names) {
+            for (int g = 0; g < themes.length; g++) {
+                if (themes[g].equals(name)) mask |= 1 << g;
+            }
+        }
+        return mask;
+    }
+
+    public int groupOfWord(int wordIdx) { return wordGroup[wordIdx]; }
+    public String getTheme(int group) { return themes[group]; }
+    public int getGroupCount() { return themes.length; }
+    public List<String> getWords() { return words; }
+}
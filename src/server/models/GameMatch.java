@@ -2,8 +2,6 @@ package server.models;
 
 import server.ServerConfig;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -11,62 +9,141 @@ import java.util.concurrent.ConcurrentHashMap;
 public class GameMatch {
     private final Game gameData;
     private final int runNumber;
-    private final String playedAt;
-    private final long startTimeMillis;
+    private String playedAt;
+    private long startTimeMillis;
     private final ConcurrentHashMap<String, PlayerGameState> players;
 
+    // Parole e gruppi in forma compilata (ricostruita se la partita arriva dallo storico)
+    private transient volatile CompiledGame compiled;
+
+    // Payload serializzati una volta sola, solo finché la partita è quella corrente
+    private transient volatile MatchPayloads payloads;
+    private transient volatile boolean live;
+
+    // Contatori e classifica aggiornati a ogni mossa (ricostruiti se la partita arriva dallo storico)
+    private transient volatile MatchStats stats;
+
+    // Fine prevista: la sposta il GameScheduler (chiusura anticipata o nuova durata)
+    private transient volatile long endTimeMillis;
+
     public GameMatch(Game gameData, int runNumber) {
         this.gameData = gameData;
         this.runNumber = runNumber;
         this.playedAt = LocalDateTime.now().toString();
         this.startTimeMillis = System.currentTimeMillis();
+        this.endTimeMillis = startTimeMillis + ServerConfig.GAME_DURATION * 1000L;
         this.players = new ConcurrentHashMap<>();
+        this.compiled = new CompiledGame(gameData);
+        this.stats = new MatchStats();
+    }
+
+    // Inizio effettivo: la partita può essere stata creata (e preparata) prima
+    public void begin() {
+        this.playedAt = LocalDateTime.now().toString();
+        this.startTimeMillis = System.currentTimeMillis();
+        this.endTimeMillis = startTimeMillis + ServerConfig.GAME_DURATION * 1000L;
+    }
+
+    // Lavoro fatto prima del cambio partita: payload serializzati e tenuti in cache
+    public void prewarm() {
+        getCompiled();
+        MatchPayloads p = new MatchPayloads(gameData);
+        p.prebuild();
+        payloads = p;
+        live = true;
+    }
+
+    public CompiledGame getCompiled() {
+        CompiledGame c = compiled;
+        if (c == null) {
+            c = new CompiledGame(gameData);
+            compiled = c;
+        }
+        return c;
+    }
+
+    // Partite dello storico salvate col vecchio formato (temi indovinati per nome)
+    public void upgradeLegacyState() {
+        CompiledGame c = getCompiled();
+        for (PlayerGameState p : players.values()) p.upgradeLegacy(c);
+        stats = null; // gli stati sono cambiati: contatori da ricostruire
     }
 
     public PlayerGameState getOrCreatePlayerState(String username) {
-        return players.computeIfAbsent(username, k -> {
-            PlayerGameState ps = new PlayerGameState();
-            List<String> allWords = new ArrayList<>();
-            for (Game.Group g : gameData.getGroups()) {
-                allWords.addAll(g.getWords());
+        PlayerGameState state = players.get(username);
+        if (state != null) return state;
+
+        PlayerGameState created = PlayerGameState.shuffled(getCompiled().getWords().size());
+        state = players.putIfAbsent(username, created);
+        if (state != null) return state;
+        getStats().update(username, created);
+        return created;
+    }
+
+    public MatchStats getStats() {
+        MatchStats s = stats;
+        if (s == null) {
+            synchronized (this) {
+                s = stats;
+                if (s == null) {
+                    s = MatchStats.rebuild(players);
+                    stats = s;
+                }
             }
-            Collections.shuffle(allWords);
-            ps.setShuffledWords(allWords);
-            return ps;
-        });
+        }
+        return s;
+    }
+
+    // Dopo un CAS riuscito sullo stato del giocatore
+    public void onStateChanged(String username, PlayerGameState state) {
+        getStats().update(username, state);
+    }
+
+    // Solo da chi ha vinto il CAS che ha chiuso la partita del giocatore (finalState)
+    public void onPlayerFinished(String username, PlayerGameState state, int finalState) {
+        MatchStats s = getStats();
+        s.recordFinish(finalState);
+        s.update(username, state);
     }
     
+    // Griglia del giocatore come lista di parole
+    public List<String> getShuffledWords(PlayerGameState state) {
+        return state.getShuffledWords(getCompiled());
+    }
+
     public PlayerGameState getPlayerState(String username) {
         return players.get(username);
     }
     
     public int getTimeLeft() {
-        long elapsed = (System.currentTimeMillis() - startTimeMillis) / 1000;
-        int remaining = (int) (ServerConfig.GAME_DURATION - elapsed);
-        return Math.max(0, remaining);
+        long remaining = endTimeMillis - System.currentTimeMillis();
+        return remaining <= 0 ? 0 : (int) ((remaining + 999) / 1000);
     }
 
-    // SNAPSHOT CON MEDIA E VITTORIA CORRETTA
+    public long getEndTimeMillis() { return endTimeMillis; }
+    public void setEndTimeMillis(long endTimeMillis) { this.endTimeMillis = endTimeMillis; }
+
+    // SNAPSHOT CON MEDIA E VITTORIA CORRETTA, letto dai contatori senza scorrere i giocatori
     public StatsSnapshot getStatsSnapshot() {
-        int active = 0, finished = 0, won = 0;
-        float totalScore = 0;
-
-        for (PlayerGameState p : players.values()) {
-            if (p.isFinished()) {
-                finished++;
-                totalScore += p.getScore();
-                
-                // Usa il flag impostato da GameHandler
-                if (p.hasWon()) { 
-                    won++;
-                }
-            } else {
-                active++;
-            }
-        }
-        
-        float avg = (finished > 0) ? (totalScore / finished) : 0.0f;
-        return new StatsSnapshot(active, finished, won, avg);
+        MatchStats s = getStats();
+        int finished = s.getFinished();
+        int active = Math.max(0, players.size() - finished);
+        float avg = (finished > 0) ? ((float) s.getScoreSum() / finished) : 0.0f;
+        return new StatsSnapshot(active, finished, s.getWon(), avg);
+    }
+
+    // Per la partita corrente i payload sono in cache, per quelle archiviate si ricostruiscono
+    public MatchPayloads getPayloads() {
+        MatchPayloads p = payloads;
+        if (p != null) return p;
+        p = new MatchPayloads(gameData);
+        if (live) payloads = p;
+        return p;
+    }
+
+    public void setLive(boolean live) {
+        this.live = live;
+        if (!live) payloads = null;
     }
 
     public Game getGameData() { return gameData; }
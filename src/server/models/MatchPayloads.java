@@ -0,0 +1,58 @@
+package server.models;
+
+import com.google.gson.Gson;
+import utils.PreSerializedList;
+import utils.ServerResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frammenti di risposta che dipendono solo dalla definizione del Game (immutabile):
+ * soluzione completa e gruppi indovinati, serializzati una volta per GameMatch.
+ */
+public class MatchPayloads {
+    private static final Gson gson = new Gson();
+
+    private final List<ServerResponse.GroupData> groups;
+    private final PreSerializedList<ServerResponse.GroupData> solution;
+
+    // gruppi indovinati per ogni combinazione (bit i = gruppo i), costruiti al primo uso
+    private final PreSerializedList<ServerResponse.GroupData>[] correctGroupsByMask;
+
+    public MatchPayloads(Game game) {
+        groups = new ArrayList<>();
+        for (Game.Group g : game.getGroups()) {
+            groups.add(new ServerResponse.GroupData(g.getTheme(), g.getWords()));
+        }
+        solution = PreSerializedList.of(groups, gson);
+        // array di tipo generico: creato con il wildcard, ogni elemento ha il tipo dichiarato
+        @SuppressWarnings("unchecked")
+        PreSerializedList<ServerResponse.GroupData>[] masks =
+            (PreSerializedList<ServerResponse.GroupData>[]) new PreSerializedList<?>[1 << groups.size()];
+        correctGroupsByMask = masks;
+    }
+
+    // Serializza subito i gruppi indovinati per tutte le combinazioni (2^gruppi, 16 con 4 gruppi)
+    public void prebuild() {
+        for (int mask = 0; mask < correctGroupsByMask.length; mask++) getCorrectGroups(mask);
+    }
+
+    public PreSerializedList<ServerResponse.GroupData> getSolution() {
+        return solution;
+    }
+
+    public PreSerializedList<ServerResponse.GroupData> getCorrectGroups(int mask) {
+        PreSerializedList<ServerResponse.GroupData> cached = correctGroupsByMask[mask];
+        if (cached == null) {
+            List<ServerResponse.GroupData> selected = new ArrayList<>();
+            for (int i = 0; i < groups.size(); i++) {
+                if ((mask & (1 << i)) != 0) selected.add(groups.get(i));
+            }
+            // costruzione idempotente: in caso di corsa vince l'ultima, il contenuto è identico
+            cached = PreSerializedList.of(selected, gson);
+            correctGroupsByMask[mask] = cached;
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,82 @@
+package server.models;
+
+import utils.ServerResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistiche di una partita aggiornate a ogni transizione di stato dei giocatori,
+ * invece di scorrere tutti i PlayerGameState a ogni richiesta.
+ * Contatori (giocatori finiti, vinti, somma dei punteggi finali) con LongAdder
+ * e classifica della partita sempre ordinata in un ConcurrentSkipListSet.
+ */
+public class MatchStats {
+    // punteggio decrescente, a parità nome crescente (il nome rende unica ogni voce)
+    private static final Comparator<ServerResponse.PlayerResult> ORDER =
+        Comparator.comparingInt((ServerResponse.PlayerResult r) -> -r.score).thenComparing(r -> r.username);
+
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder won = new LongAdder();
+    private final LongAdder scoreSum = new LongAdder(); // solo giocatori che hanno finito
+
+    private final ConcurrentSkipListSet<ServerResponse.PlayerResult> ranking = new ConcurrentSkipListSet<>(ORDER);
+    // voce attuale di ogni giocatore in ranking (per rimuoverla quando cambia)
+    private final ConcurrentHashMap<String, ServerResponse.PlayerResult> entries = new ConcurrentHashMap<>();
+
+    // Ricostruzione da zero, per le partite lette dallo storico
+    static MatchStats rebuild(Map<String, PlayerGameState> players) {
+        MatchStats stats = new MatchStats();
+        for (Map.Entry<String, PlayerGameState> e : players.entrySet()) {
+            int s = e.getValue().snapshot();
+            if (PlayerGameState.isFinished(s)) stats.recordFinish(s);
+            stats.update(e.getKey(), e.getValue());
+        }
+        return stats;
+    }
+
+    // Chiamato una sola volta per giocatore, da chi ha vinto il CAS che chiude la sua partita
+    void recordFinish(int finalState) {
+        finished.increment();
+        scoreSum.add(PlayerGameState.score(finalState));
+        if (PlayerGameState.hasWon(finalState)) won.increment();
+    }
+
+    // Riposiziona il giocatore in classifica. compute() serializza gli aggiornamenti dello stesso
+    // giocatore e rilegge lo stato dentro la sezione: vince sempre lo stato più recente
+    void update(String username, PlayerGameState state) {
+        entries.compute(username, (name, old) -> {
+            int s = state.snapshot();
+            if (old != null) {
+                if (old.score == PlayerGameState.score(s) && old.won == PlayerGameState.hasWon(s)) return old;
+                ranking.remove(old);
+            }
+            ServerResponse.PlayerResult entry = new ServerResponse.PlayerResult(name, PlayerGameState.score(s), PlayerGameState.hasWon(s));
+            ranking.add(entry);
+            return entry;
+        });
+    }
+
+    public int getFinished() { return finished.intValue(); }
+    public int getWon() { return won.intValue(); }
+    public long getScoreSum() { return scoreSum.sum(); }
+
+    // Voce attuale del giocatore in classifica (null se non ha uno stato nella partita)
+    public ServerResponse.PlayerResult entryOf(String username) {
+        return entries.get(username);
+    }
+
+    // Primi n giocatori della partita (n <= 0: tutti)
+    public List<ServerResponse.PlayerResult> top(int n) {
+        List<ServerResponse.PlayerResult> result = new ArrayList<>();
+        Iterator<ServerResponse.PlayerResult> it = ranking.iterator();
+        while (it.hasNext() && (n <= 0 || result.size() < n)) result.add(it.next());
+        return result;
+    }
+}
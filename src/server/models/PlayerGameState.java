@@ -1,53 +1,228 @@
 package server.models;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.IntUnaryOperator;
 
+/**
+ * Stato di un giocatore in una partita, tutto in due primitivi:
+ *  - state: bit 0-7 gruppi indovinati, bit 8-15 errori, bit 16 finita, bit 17 vinta
+ *  - grid:  griglia mescolata come permutazione, il nibble i è l'indice canonico
+ *           (vedi CompiledGame) della parola mostrata in posizione i
+ * Le parole vere si ricostruiscono solo quando servono a una risposta.
+ *
+ * state è un valore immutabile che si sostituisce con compareAndSet: due richieste
+ * concorrenti dello stesso giocatore non perdono aggiornamenti e solo una
+ * delle due può chiudere la partita (vedi tryFinish e GameHandler).
+ * Non ci sono setter: ogni cambio di stato passa da compareAndSet o tryFinish.
+ */
+@JsonAdapter(PlayerGameState.Adapter.class)
 public class PlayerGameState {
-    private final Set<String> guessedThemes = new HashSet<>();
-    private List<String> shuffledWords = new ArrayList<>();
-    private int errors = 0;
-    private boolean finished = false;
-    private boolean won = false; 
+    private static final int GROUPS_MASK = 0xFF;
+    private static final int ERRORS_SHIFT = 8;
+    private static final int ERRORS_MASK = 0xFF << ERRORS_SHIFT;
+    private static final int FINISHED = 1 << 16;
+    private static final int WON = 1 << 17;
 
-    // --- LOGICA DI GIOCO ---
+    private static final AtomicIntegerFieldUpdater<PlayerGameState> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(PlayerGameState.class, "state");
+
+    private volatile int state;
+    private long grid; // scritta solo alla creazione
 
-    public void addGuessedTheme(String theme) {
-        guessedThemes.add(theme);
+    // Solo per gli stati letti nel vecchio formato, vedi upgradeLegacy
+    private Legacy legacy;
+
+    private static class Legacy {
+        Set<String> guessedThemes;
+        List<String> shuffledWords;
     }
-    
-    public boolean isThemeGuessed(String theme) {
-        return guessedThemes.contains(theme);
+
+    public PlayerGameState() {}
+
+    // Nuovo stato con la griglia mescolata a caso (Fisher-Yates direttamente sui nibble)
+    public static PlayerGameState shuffled(int wordCount) {
+        PlayerGameState ps = new PlayerGameState();
+        long code = identity(wordCount);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int i = wordCount - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            long a = (code >>> (4 * i)) & 0xF;
+            long b = (code >>> (4 * j)) & 0xF;
+            code &= ~((0xFL << (4 * i)) | (0xFL << (4 * j)));
+            code |= (b << (4 * i)) | (a << (4 * j));
+        }
+        ps.grid = code;
+        return ps;
+    }
+
+    private static long identity(int wordCount) {
+        long code = 0;
+        for (int i = 0; i < wordCount; i++) code |= (long) i << (4 * i);
+        return code;
     }
 
-    public void incrementErrors() {
-        errors++;
+    // --- TRANSIZIONI ATOMICHE ---
+
+    public int snapshot() { return state; }
+
+    public boolean compareAndSet(int expected, int next) {
+        return STATE.compareAndSet(this, expected, next);
+    }
+
+    private int update(IntUnaryOperator op) {
+        return STATE.updateAndGet(this, op);
+    }
+
+    // Chiude la partita; true solo per la chiamata che l'ha effettivamente chiusa
+    public boolean tryFinish(boolean won) {
+        while (true) {
+            int s = state;
+            if (isFinished(s)) return false;
+            if (compareAndSet(s, finish(s, won))) return true;
+        }
+    }
+
+    // Lettura e costruzione dei valori di stato (senza effetti)
+    public static int guessedGroups(int s) { return s & GROUPS_MASK; }
+    public static int errors(int s) { return (s & ERRORS_MASK) >>> ERRORS_SHIFT; }
+    public static boolean isFinished(int s) { return (s & FINISHED) != 0; }
+    public static boolean hasWon(int s) { return (s & WON) != 0; }
+    public static int score(int s) { return (Integer.bitCount(s & GROUPS_MASK) * 6) - (errors(s) * 4); }
+
+    public static int withGroup(int s, int group) { return s | (1 << group); }
+    public static int withError(int s) {
+        int errors = errors(s);
+        return (errors < 0xFF) ? (s & ~ERRORS_MASK) | ((errors + 1) << ERRORS_SHIFT) : s;
+    }
+    public static int finish(int s, boolean won) { return s | FINISHED | (won ? WON : 0); }
+
+    // --- LOGICA DI GIOCO ---
+
+    public boolean isGroupGuessed(int group) {
+        return (state & (1 << group)) != 0;
     }
 
     public int getScore() {
-        return (guessedThemes.size() * 6) - (errors * 4);
+        return score(state);
     }
 
     public int getGroupsFoundCount() {
-        return guessedThemes.size();
+        return Integer.bitCount(state & GROUPS_MASK);
     }
 
     // --- GETTERS & SETTERS ---
-    public Set<String> getGuessedThemes() { return guessedThemes; }
-    public int getErrors() { return errors; }
-    
-    public boolean isFinished() { return finished; }
-    public void setFinished(boolean finished) { this.finished = finished; }
+    public int getGuessedGroups() { return guessedGroups(state); }
+    public int getErrors() { return errors(state); }
     
-    public List<String> getShuffledWords() { return shuffledWords; }
-    public void setShuffledWords(List<String> words) { this.shuffledWords = words; }
+    public boolean isFinished() { return isFinished(state); }
+
+    // Griglia del giocatore espansa in parole (nuova lista a ogni chiamata)
+    public List<String> getShuffledWords(CompiledGame game) {
+        List<String> canonical = game.getWords();
+        List<String> words = new ArrayList<>(canonical.size());
+        for (int i = 0; i < canonical.size(); i++) {
+            words.add(canonical.get((int) ((grid >>> (4 * i)) & 0xF)));
+        }
+        return words;
+    }
 
     // --- GESTIONE VITTORIA ---
     // Usato da GameMatch per le statistiche
-    public boolean hasWon() { return won; }
-    
-    // Usato da GameHandler per decretare la vittoria
-    public void setWon(boolean won) { this.won = won; } 
-}
\ No newline at end of file
+    public boolean hasWon() { return hasWon(state); }
+
+    // --- VECCHIO FORMATO ---
+
+    // Stato salvato con temi e parole per nome: lo converto una volta sola
+    void upgradeLegacy(CompiledGame game) {
+        Legacy old = legacy;
+        if (old == null) return;
+        if (old.guessedThemes != null) {
+            int themes = game.groupMaskOfThemes(old.guessedThemes);
+            update(s -> s | themes);
+        }
+
+        long code = identity(game.getWords().size());
+        if (old.shuffledWords != null && old.shuffledWords.size() == game.getWords().size()) {
+            long converted = 0;
+            for (int i = 0; i < old.shuffledWords.size(); i++) {
+                int idx = game.indexOf(old.shuffledWords.get(i));
+                if (idx < 0) { converted = code; break; }
+                converted |= (long) idx << (4 * i);
+            }
+            code = converted;
+        }
+        grid = code;
+        legacy = null;
+    }
+
+    /**
+     * Su disco {"state": int, "grid": long}.
+     * Legge anche il vecchio formato (guessedThemes, shuffledWords, errors, finished, won).
+     */
+    public static class Adapter extends TypeAdapter<PlayerGameState> {
+        @Override
+        public void write(JsonWriter out, PlayerGameState ps) throws IOException {
+            if (ps == null) { out.nullValue(); return; }
+            out.beginObject();
+            out.name("state").value(ps.state);
+            out.name("grid").value(ps.grid);
+            out.endObject();
+        }
+
+        @Override
+        public PlayerGameState read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) { in.nextNull(); return null; }
+
+            PlayerGameState ps = new PlayerGameState();
+            Legacy old = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) { in.nextNull(); continue; }
+                switch (name) {
+                    case "state": ps.state = in.nextInt(); break;
+                    case "grid": ps.grid = in.nextLong(); break;
+                    // vecchio formato
+                    case "guessedGroups": ps.state |= in.nextInt() & GROUPS_MASK; break;
+                    case "errors":
+                        ps.state |= (Math.min(in.nextInt(), 0xFF) << ERRORS_SHIFT);
+                        break;
+                    case "finished": if (in.nextBoolean()) ps.state |= FINISHED; break;
+                    case "won": if (in.nextBoolean()) ps.state |= WON; break;
+                    case "guessedThemes":
+                        if (old == null) old = new Legacy();
+                        old.guessedThemes = new HashSet<>(readStrings(in));
+                        break;
+                    case "shuffledWords":
+                        if (old == null) old = new Legacy();
+                        old.shuffledWords = readStrings(in);
+                        break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            ps.legacy = old;
+            return ps;
+        }
+
+        private static List<String> readStrings(JsonReader in) throws IOException {
+            List<String> list = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) list.add(in.nextString());
+            in.endArray();
+            return list;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package server.models;
+
+/**
+ * Stanza di gioco: ogni stanza ha la propria partita corrente e il proprio timer.
+ * I giocatori vengono assegnati a una stanza al login (GameManager.roomFor)
+ * e vedono solo la partita, le notifiche e gli aggiornamenti della loro stanza.
+ */
+public class Room {
+    private final int index;
+    private final String name;
+
+    // partita in corso nella stanza: cambiata dal GameManager sotto il suo lock, letta senza lock
+    private volatile GameMatch currentMatch;
+    // prossima partita, già preparata durante il round in corso
+    private volatile GameMatch nextMatch;
+
+    public Room(int index) {
+        this.index = index;
+        this.name = "stanza-" + index;
+    }
+
+    public int getIndex() { return index; }
+    public String getName() { return name; }
+
+    public GameMatch getCurrentMatch() { return currentMatch; }
+    public void setCurrentMatch(GameMatch match) { this.currentMatch = match; }
+    public GameMatch getNextMatch() { return nextMatch; }
+    public void setNextMatch(GameMatch match) { this.nextMatch = match; }
+}
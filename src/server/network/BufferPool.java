@@ -0,0 +1,114 @@
+package server.network;
+
+import server.ServerConfig;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool di ByteBuffer diretti condiviso dallo stack di rete del server.
+ * I buffer sono divisi in classi di dimensione: acquire() restituisce il più piccolo
+ * buffer libero che basta, release() lo rimette nella sua classe.
+ * Le richieste più grandi della classe massima ricevono un buffer heap non riciclato.
+ */
+public class BufferPool {
+    // Classi di dimensione (byte)
+    private static final int[] SIZE_CLASSES = {512, 4096, 16384, 65536};
+
+    private static final BufferPool instance = new BufferPool();
+
+    private final Queue<ByteBuffer>[] freeLists;
+    private final AtomicInteger[] freeCounts;
+
+    // Contatori per l'amministrazione
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private BufferPool() {
+        // array di tipo generico: creato con il wildcard, ogni elemento è una coda di ByteBuffer
+        @SuppressWarnings("unchecked")
+        Queue<ByteBuffer>[] lists = (Queue<ByteBuffer>[]) new Queue<?>[SIZE_CLASSES.length];
+        freeLists = lists;
+        freeCounts = new AtomicInteger[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            freeLists[i] = new ConcurrentLinkedQueue<>();
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    // Buffer con capacità >= minCapacity, pulito e in modalità scrittura
+    public ByteBuffer acquire(int minCapacity) {
+        outstanding.incrementAndGet();
+        int cls = classFor(minCapacity);
+        if (cls < 0) {
+            misses.increment();
+            return ByteBuffer.allocate(minCapacity);
+        }
+
+        ByteBuffer buffer = freeLists[cls].poll();
+        if (buffer != null) {
+            freeCounts[cls].decrementAndGet();
+            hits.increment();
+            buffer.clear();
+            return buffer;
+        }
+
+        misses.increment();
+        return ByteBuffer.allocateDirect(SIZE_CLASSES[cls]);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) return;
+        outstanding.decrementAndGet();
+        if (!buffer.isDirect()) return;
+
+        int cls = classOf(buffer.capacity());
+        if (cls < 0) return;
+
+        // oltre il limite lascio il buffer al GC
+        if (freeCounts[cls].incrementAndGet() <= ServerConfig.BUFFER_POOL_MAX_PER_CLASS) {
+            freeLists[cls].add(buffer);
+        } else {
+            freeCounts[cls].decrementAndGet();
+        }
+    }
+
+    private static int classFor(int size) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size <= SIZE_CLASSES[i]) return i;
+        }
+        return -1;
+    }
+
+    private static int classOf(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity == SIZE_CLASSES[i]) return i;
+        }
+        return -1;
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getOutstanding() { return outstanding.get(); }
+
+    // Riepilogo testuale per i comandi admin
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("BufferPool: hit=").append(getHits())
+          .append(" miss=").append(getMisses())
+          .append(" in uso=").append(getOutstanding());
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            sb.append("\n  classe ").append(SIZE_CLASSES[i]).append("B: liberi=").append(freeCounts[i].get());
+        }
+        return sb.toString();
+    }
+}
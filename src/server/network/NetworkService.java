@@ -2,6 +2,7 @@ package server.network;
 
 import server.ServerConfig;
 import server.models.ClientSession;
+import server.models.Room;
 import server.ui.ServerLogger;
 import utils.ServerResponse;
 
@@ -11,54 +12,90 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Front end di rete in modalità boss/worker:
+ * il main thread accetta le connessioni (acceptor) e le distribuisce
+ * in round-robin agli N SelectorLoop, che si occupano delle letture.
+ */
 public class NetworkService {
-    private Selector selector;
+    private Selector acceptSelector;
     private ServerSocketChannel serverSocket;
     private final ExecutorService workerPool;
+    private final SessionDispatcher dispatcher;
     private final UdpSender udpSender;
     private volatile boolean running = true;
 
-    // sessioni in un Set Thread-Safe separato dal Selector
-    private final Set<ClientSession> activeSessions = ConcurrentHashMap.newKeySet();
+    // reactor worker, ognuno possiede le proprie sessioni
+    private SelectorLoop[] loops;
+    private Thread[] loopThreads;
+    private int nextLoop = 0;
 
     public NetworkService() {
-        this.workerPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        this.udpSender = new UdpSender();
+        this.workerPool = createWorkerPool(ServerConfig.WORKER_MODE);
+        this.dispatcher = new SessionDispatcher(workerPool, this);
+        this.udpSender = UdpSender.getInstance();
+    }
+
+    // "virtual": un virtual thread per turno di sessione (JDK 21+), altrimenti pool fisso di N core
+    private static ExecutorService createWorkerPool(String mode) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            try {
+                // via reflection: il progetto compila anche con JDK 17
+                ExecutorService pool = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                ServerLogger.info("Worker: virtual thread");
+                return pool;
+            } catch (ReflectiveOperationException e) {
+                ServerLogger.error("Virtual thread non disponibili su Java " + Runtime.version().feature() + ": uso il pool fisso");
+            }
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        ServerLogger.info("Worker: pool fisso di " + threads + " thread");
+        return Executors.newFixedThreadPool(threads);
     }
 
     public void init() throws IOException {
-        selector = Selector.open();
+        acceptSelector = Selector.open();
         serverSocket = ServerSocketChannel.open();
         serverSocket.bind(new InetSocketAddress(ServerConfig.PORT));
         serverSocket.configureBlocking(false);
-        serverSocket.register(selector, SelectionKey.OP_ACCEPT);
-        ServerLogger.info("Server inizializzato su porta TCP " + ServerConfig.PORT);
+        serverSocket.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        udpSender.init();
+
+        loops = new SelectorLoop[ServerConfig.SELECTOR_THREADS];
+        loopThreads = new Thread[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop(i, this);
+            loopThreads[i] = new Thread(loops[i], "selector-" + i);
+            loopThreads[i].start();
+        }
+        ServerLogger.info("Server inizializzato su porta TCP " + ServerConfig.PORT + " (" + loops.length + " selector)");
     }
 
     public void start() {
         ServerLogger.info("Network Loop avviato. In attesa di connessioni...");
         try {
             while (running && !Thread.currentThread().isInterrupted()) {
-                if (selector == null) return;
-                selector.select(); 
+                if (acceptSelector == null) return;
+                acceptSelector.select(); 
                 if (!running) break;
 
-                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
                 while (keys.hasNext()) {
                     SelectionKey key = keys.next();
                     keys.remove();
                     if (!key.isValid()) continue;
 
                     if (key.isAcceptable()) acceptConnection();
-                    else if (key.isReadable()) TcpReader.readFromClient(key, this);
                 }
             }
         } catch (IOException e) {
@@ -66,66 +103,117 @@ public class NetworkService {
         }
     }
 
+    // Ordine di chiusura: niente nuove connessioni, poi i worker completano le richieste accodate
+    // mentre i loop sono ancora attivi e ne scrivono le risposte, infine i loop svuotano le code e si fermano
     public void stop() {
         this.running = false;
-        if (selector != null) selector.wakeup();
-        if (workerPool != null) workerPool.shutdown();
+        if (acceptSelector != null) acceptSelector.wakeup();
+        stopWorkers();
+        if (loops != null) {
+            for (SelectorLoop loop : loops) if (loop != null) loop.stop();
+            try {
+                for (Thread t : loopThreads) if (t != null) t.join(SelectorLoop.stopTimeoutMillis() + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        udpSender.close();
         ServerLogger.info("NetworkService fermato.");
     }
 
-    private void acceptConnection() throws IOException {
-        SocketChannel client = serverSocket.accept();
-        client.configureBlocking(false);
-        
-        ClientSession session = new ClientSession();
-        SelectionKey key = client.register(selector, SelectionKey.OP_READ);
-        
-        key.attach(session);
-        session.setSelectionKey(key); 
-        
-        // AGGIUNTA SICURA
-        activeSessions.add(session);
+    // Le richieste già accodate vengono completate (e le risposte accodate) prima di chiudere il resto;
+    // oltre WORKER_SHUTDOWN_SECONDS i worker ancora attivi vengono interrotti
+    private void stopWorkers() {
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(ServerConfig.WORKER_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                ServerLogger.error("Worker ancora attivi dopo " + ServerConfig.WORKER_SHUTDOWN_SECONDS + "s: interruzione");
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        ServerLogger.info("Nuova connessione: " + client.getRemoteAddress());
+    // il socket viene solo accettato qui, la registrazione la fa il loop destinatario
+    private void acceptConnection() throws IOException {
+        SocketChannel client;
+        while ((client = serverSocket.accept()) != null) {
+            loops[nextLoop].assign(client);
+            nextLoop = (nextLoop + 1) % loops.length;
+        }
     }
 
     public void submitTask(Runnable task) {
         if (!workerPool.isShutdown()) workerPool.execute(task);
     }
 
+    // richieste di un client: in ordine tra loro, in parallelo con gli altri client
+    void submitOrdered(ClientSession session, Runnable task) {
+        dispatcher.dispatch(session, task);
+    }
+
+    // la chiusura vera la fa il SelectorLoop proprietario, che restituisce anche i buffer al pool
     public void disconnectClient(SelectionKey key) {
+        if (key.attachment() instanceof ClientSession) {
+            ClientSession session = (ClientSession) key.attachment();
+            loops[session.getLoopIndex()].close(session);
+            return;
+        }
         try {
-            // RIMOZIONE SICURA
-            if (key.attachment() instanceof ClientSession) {
-                activeSessions.remove((ClientSession) key.attachment());
-            }
-            
             key.channel().close();
             key.cancel();
-            ServerLogger.info("Client disconnesso.");
         } catch (IOException e) {
             ServerLogger.error("Errore disconnessione: " + e.getMessage());
         }
     }
 
-    
+    // vista aggregata delle sessioni di tutti i loop
     public Collection<ClientSession> getAllSessions() {
-        return Collections.unmodifiableCollection(activeSessions);
+        if (loops == null) return Collections.emptyList();
+        List<ClientSession> all = new ArrayList<>();
+        for (SelectorLoop loop : loops) all.addAll(loop.getSessions());
+        return Collections.unmodifiableCollection(all);
     }
 
     // invio risposte 
 
     public void sendUdpResponse(ServerResponse.Event event) {
-        udpSender.broadcast(event, getAllSessions());
+        udpSender.broadcast(event, this::getAllSessions);
+    }
+
+    // notifica ai soli giocatori di una stanza
+    public void sendUdpResponse(ServerResponse.Event event, Room room) {
+        udpSender.broadcast(event, () -> getRoomSessions(room));
     }
 
-    public void sendTcpResponse(ClientSession session, String json) {
+    // notifica a un gruppo di sessioni già scelto (es. un lotto del cambio partita)
+    public void sendUdpResponse(ServerResponse.Event event, Collection<ClientSession> sessions) {
+        udpSender.broadcast(event, () -> sessions);
+    }
+
+    public Collection<ClientSession> getRoomSessions(Room room) {
+        List<ClientSession> members = new ArrayList<>();
+        for (ClientSession s : getAllSessions()) {
+            if (s.isLoggedIn() && s.getRoom() == room) members.add(s);
+        }
+        return members;
+    }
+
+    // la risposta viene codificata in JSON o in binario a seconda del protocollo della sessione
+    public void sendTcpResponse(ClientSession session, ServerResponse response) {
         if (session != null && session.getSelectionKey() != null && session.getSelectionKey().isValid()) {
-            TcpWriter.send(session.getSelectionKey(), json, this);
+            TcpWriter.send(session.getSelectionKey(), response, this);
         }
     }
     
-    public void sendTcpResponse(SelectionKey key, String json) {
-        TcpWriter.send(key, json, this);
+    public void sendTcpResponse(SelectionKey key, ServerResponse response) {
+        TcpWriter.send(key, response, this);
+    }
+
+    // la scrittura vera la fa il SelectorLoop che possiede la sessione
+    void requestWrite(ClientSession session) {
+        loops[session.getLoopIndex()].requestWrite(session);
     }
-}
\ No newline at end of file
+}
@@ -1,46 +1,176 @@
 package server.network;
 
+import server.ServerConfig;
 import server.handlers.ClientRequestHandler;
+import server.handlers.ResponseUtils;
 import server.models.ClientSession;
 import server.ui.ServerLogger;
+import utils.BinaryCodec;
+import utils.ClientRequest;
+import utils.ResponseCodes;
+import utils.ServerResponse;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Framing dei messaggi.
+ * Il primo byte della connessione sceglie il protocollo: BinaryCodec.MAGIC per il binario
+ * (frame con prefisso di lunghezza), qualsiasi altro byte per il JSON a righe.
+ * I byte restano nel buffer della sessione, il '\n' si cerca direttamente sui byte
+ * e ogni byte viene esaminato una sola volta anche se il messaggio arriva a pezzi.
+ */
 public class PacketHandler {
-        
-    public static void processReceivedData(ClientSession session, byte[] data, NetworkService netService, SelectionKey key) {
-        // Accod i nuovi dati al buffer della sessione
-        session.getBuffer().append(new String(data));
-        
-        // Loop per processare tutti i messaggi completi (che finiscono con \n)
-        while (true) {
-            String currentBuffer = session.getBuffer().toString();
-            int newlineIndex = currentBuffer.indexOf('\n');
-            
-            if (newlineIndex == -1) break;
-            
-            // il messaggio JSON pulito
-            String jsonMessage = currentBuffer.substring(0, newlineIndex).trim();
-            session.getBuffer().delete(0, newlineIndex + 1);
-            
-            if (!jsonMessage.isEmpty()) {
-                dispatchMessage(jsonMessage, session, netService, key);
+
+    // Restituisce il buffer della sessione pronto per channel.read(), ingrandendolo se serve
+    static ByteBuffer prepareForRead(ClientSession session, NetworkService netService, SelectionKey key) {
+        ByteBuffer buffer = session.getInboundBuffer();
+        if (buffer.hasRemaining()) return buffer;
+
+        if (buffer.capacity() >= ServerConfig.MAX_FRAME_SIZE) {
+            // Messaggio oltre il limite: lo scarto fino al prossimo '\n'
+            buffer.clear();
+            session.setScanOffset(0);
+            if (!session.isDiscarding()) {
+                session.setDiscarding(true);
+                ServerLogger.error("Messaggio oltre " + ServerConfig.MAX_FRAME_SIZE + " byte da " + clientIp(key) + ": scartato");
+                netService.sendTcpResponse(key, ResponseUtils.error("Messaggio troppo lungo", ResponseCodes.PAYLOAD_TOO_LARGE));
             }
+            return buffer;
         }
+
+        ByteBuffer bigger = BufferPool.getInstance().acquire(Math.min(buffer.capacity() * 2, ServerConfig.MAX_FRAME_SIZE));
+        buffer.flip();
+        bigger.put(buffer);
+        BufferPool.getInstance().release(buffer);
+        session.setInboundBuffer(bigger);
+        return bigger;
+    }
+
+    public static void processReceivedData(ClientSession session, NetworkService netService, SelectionKey key) {
+        if (!session.isProtocolNegotiated() && !negotiate(session, netService, key)) return;
+
+        if (session.isBinaryProtocol()) processBinaryFrames(session, netService, key);
+        else processLines(session, netService, key);
     }
 
-    private static void dispatchMessage(String json, ClientSession session, NetworkService netService, SelectionKey key) {
-        SocketChannel client = (SocketChannel) key.channel();
-        String clientIp = client.socket().getInetAddress().toString();
+    // Handshake: MAGIC + VERSION per il binario, altrimenti JSON. False se servono altri byte.
+    private static boolean negotiate(ClientSession session, NetworkService netService, SelectionKey key) {
+        ByteBuffer buffer = session.getInboundBuffer();
+        if (buffer.position() == 0) return false;
+
+        if (buffer.get(0) != BinaryCodec.MAGIC) {
+            session.setProtocolNegotiated(true);
+            return true;
+        }
+        if (buffer.position() < 2) return false;
+
+        byte version = buffer.get(1);
+        session.setBinaryProtocol(true);
+        session.setProtocolNegotiated(true);
+        if (version != BinaryCodec.VERSION) {
+            ServerLogger.error("Versione protocollo binario non supportata (" + version + ") da " + clientIp(key));
+            netService.disconnectClient(key);
+            return false;
+        }
+
+        // tolgo l'handshake dal buffer e confermo al client
+        buffer.flip();
+        buffer.position(2);
+        buffer.compact();
+        netService.sendTcpResponse(key, ResponseUtils.success("Protocollo binario v" + version));
+        return true;
+    }
+
+    private static void processLines(ClientSession session, NetworkService netService, SelectionKey key) {
+        ByteBuffer buffer = session.getInboundBuffer();
+        int end = buffer.position();
+        int frameStart = 0;
+
+        // Cerco i '\n' solo nei byte nuovi
+        for (int i = session.getScanOffset(); i < end; i++) {
+            if (buffer.get(i) != '\n') continue;
+
+            if (session.isDiscarding()) {
+                // fine del messaggio troppo lungo, riprendo il parsing normale
+                session.setDiscarding(false);
+            } else {
+                byte[] frame = extractFrame(buffer, frameStart, i);
+                if (frame != null) dispatchMessage(frame, session, netService, key);
+            }
+            frameStart = i + 1;
+        }
+
+        if (session.isDiscarding()) {
+            buffer.clear();
+            session.setScanOffset(0);
+            return;
+        }
+
+        // Compatto il residuo (messaggio incompleto) all'inizio del buffer
+        compactFrom(buffer, frameStart);
+        session.setScanOffset(buffer.position());
+    }
 
-        ServerLogger.logJsonReceived(clientIp, json);
+    private static void processBinaryFrames(ClientSession session, NetworkService netService, SelectionKey key) {
+        ByteBuffer buffer = session.getInboundBuffer();
+        int end = buffer.position();
+        int pos = 0;
+
+        while (pos < end) {
+            long header = BinaryCodec.peekVarint(buffer, pos, end);
+            if (header == -1) break; // prefisso incompleto
+
+            int length = (int) (header >>> 8);
+            int prefix = (int) (header & 0xFF);
+            if (header == -2 || prefix + length > ServerConfig.MAX_FRAME_SIZE) {
+                // nel binario non posso risincronizzarmi: chiudo la connessione
+                ServerLogger.error("Frame binario non valido da " + clientIp(key) + ": disconnessione");
+                netService.disconnectClient(key);
+                return;
+            }
+            if (pos + prefix + length > end) break; // payload incompleto
+
+            byte[] payload = new byte[length];
+            buffer.get(pos + prefix, payload);
+            dispatchBinary(payload, session, netService, key);
+            pos += prefix + length;
+        }
+
+        compactFrom(buffer, pos);
+    }
+
+    private static void compactFrom(ByteBuffer buffer, int from) {
+        buffer.flip();
+        buffer.position(from);
+        buffer.compact();
+    }
+
+    // Copia il frame [from, to) senza spazi iniziali/finali, null se vuoto
+    private static byte[] extractFrame(ByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) <= ' ') from++;
+        while (to > from && buffer.get(to - 1) <= ' ') to--;
+        if (from == to) return null;
+
+        byte[] frame = new byte[to - from];
+        buffer.get(from, frame);
+        return frame;
+    }
+
+    private static void dispatchMessage(byte[] frame, ClientSession session, NetworkService netService, SelectionKey key) {
+        String clientIp = clientIp(key);
         
-        //Invio al Thread Pool tramite il metodo wrap di NetworkService
-        netService.submitTask(() -> {
+        // Invio al worker pool nella coda della sessione: le risposte partono nell'ordine delle richieste
+        netService.submitOrdered(session, () -> {
             try {
+                // Unica decodifica del messaggio, fatta dal worker e non dal selector
+                String json = new String(frame, StandardCharsets.UTF_8);
+                ServerLogger.logJsonReceived(clientIp, json);
+
                 // Chiamata statica a ClientRequestHandler
-                String response = ClientRequestHandler.handleRequest(json, session);
+                ServerResponse response = ClientRequestHandler.handleRequest(json, session);
                 
                 if (response != null) {
                     netService.sendTcpResponse(key, response);
@@ -51,6 +181,25 @@ public class PacketHandler {
             }
         });
     }
-}
 
+    private static void dispatchBinary(byte[] payload, ClientSession session, NetworkService netService, SelectionKey key) {
+        String clientIp = clientIp(key);
 
+        netService.submitOrdered(session, () -> {
+            ServerResponse response;
+            try {
+                ClientRequest req = ClientRequestHandler.decodeBinary(payload, session);
+                ServerLogger.logBinaryReceived(clientIp, req.operation);
+                response = ClientRequestHandler.dispatch(req, session);
+            } catch (RuntimeException e) {
+                // opcode sconosciuto, payload troncato o griglia non aggiornata
+                response = ResponseUtils.error("Richiesta binaria non valida: " + e.getMessage(), ResponseCodes.BAD_REQUEST);
+            }
+            if (response != null) netService.sendTcpResponse(key, response);
+        });
+    }
+
+    private static String clientIp(SelectionKey key) {
+        return ((SocketChannel) key.channel()).socket().getInetAddress().toString();
+    }
+}
@@ -0,0 +1,188 @@
+package server.network;
+
+import server.models.ClientSession;
+import server.ui.ServerLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reactor "worker": un thread con il proprio Selector.
+ * Riceve i SocketChannel già accettati dall'acceptor di NetworkService
+ * e si occupa di tutte le letture e scritture delle connessioni che possiede.
+ */
+public class SelectorLoop implements Runnable {
+    // In chiusura: tempo massimo per scrivere le risposte ancora in coda
+    private static final long STOP_FLUSH_MILLIS = 2000;
+    private static final long STOP_POLL_MILLIS = 50;
+
+    private final int index;
+    private final NetworkService netService;
+    private final Selector selector;
+    private volatile boolean running = true;
+    private volatile long stopDeadline;
+    private Thread thread;
+
+    // canali passati dall'acceptor, registrati dal thread del loop
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+
+    // sessioni con risposte in coda da scrivere
+    private final Queue<ClientSession> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    // sessioni da chiudere richieste da altri thread
+    private final Queue<ClientSession> pendingCloses = new ConcurrentLinkedQueue<>();
+
+    // sessioni possedute da questo loop
+    private final Set<ClientSession> sessions = ConcurrentHashMap.newKeySet();
+
+    public SelectorLoop(int index, NetworkService netService) throws IOException {
+        this.index = index;
+        this.netService = netService;
+        this.selector = Selector.open();
+    }
+
+    // chiamato dal thread acceptor
+    public void assign(SocketChannel client) {
+        pendingChannels.add(client);
+        selector.wakeup();
+    }
+
+    // chiamato dai thread che producono risposte (worker pool, scheduler)
+    void requestWrite(ClientSession session) {
+        if (session.getWriteRequested().compareAndSet(false, true)) {
+            pendingWrites.add(session);
+            selector.wakeup();
+        }
+    }
+
+    // La chiusura avviene sempre nel thread del loop: solo lui usa il buffer di ricezione
+    void close(ClientSession session) {
+        if (Thread.currentThread() == thread) {
+            closeNow(session);
+        } else {
+            pendingCloses.add(session);
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (running) {
+                    selector.select();
+                } else {
+                    // fermato: si esce solo quando le risposte in coda sono scritte (o scade il tempo)
+                    if (flushed() || System.currentTimeMillis() >= stopDeadline) break;
+                    selector.select(STOP_POLL_MILLIS);
+                }
+
+                registerPending();
+                processPendingCloses();
+                processPendingWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isWritable()) TcpWriter.flush(key, netService);
+                    if (key.isValid() && key.isReadable()) TcpReader.readFromClient(key, this);
+                }
+            }
+        } catch (IOException e) {
+            ServerLogger.error("Errore nel selector #" + index + ": " + e.getMessage());
+        } finally {
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel client;
+        while ((client = pendingChannels.poll()) != null) {
+            try {
+                client.configureBlocking(false);
+
+                ClientSession session = new ClientSession();
+                session.setLoopIndex(index);
+                session.setClientAddress(((InetSocketAddress) client.getRemoteAddress()).getAddress());
+                session.setInboundBuffer(BufferPool.getInstance().acquire(TcpReader.BUFFER_SIZE));
+                SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+
+                key.attach(session);
+                session.setSelectionKey(key);
+                sessions.add(session);
+
+                ServerLogger.info("Nuova connessione: " + client.getRemoteAddress() + " (selector #" + index + ")");
+            } catch (IOException e) {
+                ServerLogger.error("Errore registrazione client: " + e.getMessage());
+                try { client.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private void processPendingCloses() {
+        ClientSession session;
+        while ((session = pendingCloses.poll()) != null) closeNow(session);
+    }
+
+    private void closeNow(ClientSession session) {
+        if (!sessions.remove(session)) return; // già chiusa
+
+        SelectionKey key = session.getSelectionKey();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            ServerLogger.error("Errore disconnessione: " + e.getMessage());
+        }
+        key.cancel();
+
+        // restituisco i buffer della sessione al pool
+        BufferPool.getInstance().release(session.getInboundBuffer());
+        session.setInboundBuffer(null);
+        TcpWriter.discardOutbound(session);
+
+        ServerLogger.info("Client disconnesso.");
+    }
+
+    // primo tentativo di scrittura subito, OP_WRITE solo se il kernel non accetta tutto
+    private void processPendingWrites() {
+        ClientSession session;
+        while ((session = pendingWrites.poll()) != null) {
+            session.getWriteRequested().set(false);
+            SelectionKey key = session.getSelectionKey();
+            if (key != null && key.isValid()) TcpWriter.flush(key, netService);
+        }
+    }
+
+    private boolean flushed() {
+        if (!pendingWrites.isEmpty()) return false;
+        for (ClientSession session : sessions) {
+            if (!session.getOutboundQueue().isEmpty()) return false;
+        }
+        return true;
+    }
+
+    // Il loop termina dopo aver scritto quanto già accodato, al massimo entro STOP_FLUSH_MILLIS
+    public void stop() {
+        stopDeadline = System.currentTimeMillis() + STOP_FLUSH_MILLIS;
+        running = false;
+        selector.wakeup();
+    }
+
+    static long stopTimeoutMillis() { return STOP_FLUSH_MILLIS; }
+
+    NetworkService getNetService() { return netService; }
+    Set<ClientSession> getSessions() { return sessions; }
+    public int getIndex() { return index; }
+}
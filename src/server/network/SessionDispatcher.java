@@ -0,0 +1,70 @@
+package server.network;
+
+import server.ServerConfig;
+import server.models.ClientSession;
+import server.ui.ServerLogger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Esecuzione ordinata delle richieste sul worker pool.
+ * Ogni sessione ha la propria coda (inbox) e al massimo un worker alla volta la svuota:
+ * le richieste dello stesso client vengono eseguite e risposte in ordine FIFO,
+ * mentre sessioni diverse procedono in parallelo.
+ * Le richieste in sospeso per sessione sono limitate: oltre MAX_IN_FLIGHT_PER_SESSION
+ * il SelectorLoop smette di leggere da quel client finché la coda non scende.
+ */
+public class SessionDispatcher {
+    // Richieste eseguite per turno prima di lasciare il worker alle altre sessioni
+    private static final int BATCH = 8;
+
+    private final Executor executor;
+    private final NetworkService netService;
+
+    SessionDispatcher(Executor executor, NetworkService netService) {
+        this.executor = executor;
+        this.netService = netService;
+    }
+
+    // chiamato dal SelectorLoop per ogni messaggio completo
+    void dispatch(ClientSession session, Runnable task) {
+        session.getPendingRequests().incrementAndGet();
+        session.getInbox().add(task);
+        schedule(session);
+    }
+
+    // un solo drain per sessione: chi vince il CAS lo mette in coda al pool
+    private void schedule(ClientSession session) {
+        if (!session.getDraining().compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> drain(session));
+        } catch (RejectedExecutionException e) {
+            // pool fermato: le richieste rimaste non verranno più servite
+            session.getDraining().set(false);
+        }
+    }
+
+    private void drain(ClientSession session) {
+        Runnable task;
+        int done = 0;
+        while (done < BATCH && (task = session.getInbox().poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                ServerLogger.error("Errore Worker: " + e.getMessage());
+                e.printStackTrace();
+            }
+            done++;
+
+            // sceso sotto il limite: il loop proprietario riattiva la lettura
+            if (session.getPendingRequests().decrementAndGet() == ServerConfig.MAX_IN_FLIGHT_PER_SESSION - 1) {
+                netService.requestWrite(session);
+            }
+        }
+
+        session.getDraining().set(false);
+        // arrivate altre richieste (o batch esaurito): nuovo turno in fondo alla coda del pool
+        if (!session.getInbox().isEmpty()) schedule(session);
+    }
+}
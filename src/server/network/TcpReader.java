@@ -1,5 +1,6 @@
 package server.network;
 
+import server.ServerConfig;
 import server.models.ClientSession;
 
 import java.io.IOException;
@@ -9,14 +10,16 @@ import java.nio.channels.SocketChannel;
 
 public class TcpReader {
 
-    // Dimensione buffer di lettura
-    private static final int BUFFER_SIZE = 4096;
+    // Dimensione iniziale del buffer di lettura di ogni sessione
+    public static final int BUFFER_SIZE = 4096;
 
-    public static void readFromClient(SelectionKey key, NetworkService netService) {
+    public static void readFromClient(SelectionKey key, SelectorLoop loop) {
         SocketChannel client = (SocketChannel) key.channel();
         ClientSession session = (ClientSession) key.attachment();
+        NetworkService netService = loop.getNetService();
         
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // leggo direttamente nel buffer della sessione, niente copie intermedie
+        ByteBuffer buffer = PacketHandler.prepareForRead(session, netService, key);
         int bytesRead;
 
         try {
@@ -32,13 +35,13 @@ public class TcpReader {
         }
 
         if (bytesRead > 0) {
-            buffer.flip();
-            // dati grezzi al gestore del protocollo
-            byte[] data = new byte[buffer.remaining()];
-            buffer.get(data);
-            
             // Deleghiamo la logica di assemblaggio pacchetti 
-            PacketHandler.processReceivedData(session, data, netService, key);
+            PacketHandler.processReceivedData(session, netService, key);
+
+            // troppe richieste in sospeso: smetto di leggere finché il worker non recupera
+            if (session.getPendingRequests().get() >= ServerConfig.MAX_IN_FLIGHT_PER_SESSION) {
+                TcpWriter.updateInterest(key, session);
+            }
         }
     }
-}
\ No newline at end of file
+}
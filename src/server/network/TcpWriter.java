@@ -1,33 +1,157 @@
 package server.network;
 
+import server.ServerConfig;
+import server.handlers.ResponseUtils;
 import server.models.ClientSession;
 import server.ui.ServerLogger;
+import utils.BinaryCodec;
+import utils.ServerResponse;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
 
+/**
+ * Le risposte non vengono scritte dal thread che le produce:
+ * send() le accoda nella coda di uscita della sessione e chiede
+ * al SelectorLoop proprietario di svuotarla (flush) su OP_WRITE.
+ */
 public class TcpWriter {
 
-    public static void send(SelectionKey key, String rawJson, NetworkService service) {
+    // Buffer di serializzazione binaria, uno per thread
+    private static final ThreadLocal<BinaryCodec.Writer> BINARY_WRITER = ThreadLocal.withInitial(BinaryCodec.Writer::new);
+
+    // Un encoder per thread: codifica direttamente nel buffer del pool, senza byte[] intermedi
+    private static final ThreadLocal<CharsetEncoder> ENCODER = ThreadLocal.withInitial(() ->
+            StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    public static void send(SelectionKey key, ServerResponse response, NetworkService service) {
         if (key == null || !key.isValid()) return;
 
         // info destinatario
         ClientSession session = (ClientSession) key.attachment();
-        String recipient = (session != null && session.getUsername() != null) 
-                           ? session.getUsername() : "Anonimo";
+        if (session == null) return;
+        String recipient = (session.getUsername() != null) ? session.getUsername() : "Anonimo";
+
+        // codifica nel protocollo scelto dal client + logging
+        ByteBuffer buffer;
+        if (session.isBinaryProtocol()) {
+            buffer = encodeBinary(response);
+            ServerLogger.logTraffic("[TCP OUT] -> " + recipient, response.objectCode + " (" + buffer.remaining() + " byte, binario)");
+        } else {
+            String rawJson = ResponseUtils.toJson(response);
+            ServerLogger.logTraffic("[TCP OUT] -> " + recipient, rawJson);
+            buffer = encode(rawJson, true);
+        }
+
+        // High-water mark: un client che non legge viene disconnesso
+        int pending = session.addOutboundBytes(buffer.remaining());
+        if (pending > ServerConfig.MAX_OUTBOUND_BYTES) {
+            BufferPool.getInstance().release(buffer);
+            ServerLogger.error("Client lento (" + pending + " byte in coda): disconnessione di " + recipient);
+            service.disconnectClient(key);
+            return;
+        }
 
-        // logging 
-        ServerLogger.logTraffic("[TCP OUT] -> " + recipient, rawJson);
+        session.getOutboundQueue().add(buffer);
+
+        // la sessione è stata chiusa nel frattempo: restituisco i buffer al pool
+        if (!key.isValid()) {
+            discardOutbound(session);
+            return;
+        }
+        service.requestWrite(session);
+    }
+
+    // Codifica UTF-8 in un buffer del pool, pronto per la lettura (flip già fatto)
+    static ByteBuffer encode(String text, boolean withTerminator) {
+        ByteBuffer buffer = BufferPool.getInstance().acquire(utf8Length(text) + 1);
+        CharsetEncoder encoder = ENCODER.get().reset();
+        encoder.encode(CharBuffer.wrap(text), buffer, true);
+        encoder.flush(buffer);
+        if (withTerminator) buffer.put((byte) '\n');
+        buffer.flip();
+        return buffer;
+    }
+
+    // Frame binario: lunghezza (varint) + payload, in un buffer del pool
+    static ByteBuffer encodeBinary(ServerResponse response) {
+        BinaryCodec.Writer writer = BINARY_WRITER.get();
+        writer.reset();
+        BinaryCodec.encodeResponse(response, writer);
+
+        int size = writer.size();
+        ByteBuffer buffer = BufferPool.getInstance().acquire(BinaryCodec.varintSize(size) + size);
+        BinaryCodec.putVarint(buffer, size);
+        buffer.put(writer.array(), 0, size);
+        buffer.flip();
+        return buffer;
+    }
+
+    // Limite superiore dei byte UTF-8 necessari per la stringa
+    private static int utf8Length(String text) {
+        int len = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) len++;
+            else if (c < 0x800) len += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) { len += 4; i++; }
+            else len += 3;
+        }
+        return len;
+    }
+
+    // Svuota la coda di uscita restituendo i buffer al pool
+    static void discardOutbound(ClientSession session) {
+        ByteBuffer buffer;
+        while ((buffer = session.getOutboundQueue().poll()) != null) {
+            session.addOutboundBytes(-buffer.remaining());
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    // Eseguito SOLO dal thread del SelectorLoop proprietario
+    static void flush(SelectionKey key, NetworkService service) {
+        if (!key.isValid()) return;
+        ClientSession session = (ClientSession) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        Queue<ByteBuffer> queue = session.getOutboundQueue();
 
-        // Invio 
         try {
-            String messageWithTerminator = rawJson + "\n";
-            ByteBuffer buffer = ByteBuffer.wrap(messageWithTerminator.getBytes());
-            ((SocketChannel) key.channel()).write(buffer);
+            ByteBuffer buffer;
+            while ((buffer = queue.peek()) != null) {
+                int before = buffer.remaining();
+                channel.write(buffer);
+                session.addOutboundBytes(buffer.remaining() - before);
+
+                // il kernel non accetta altro: riprovo al prossimo OP_WRITE
+                if (buffer.hasRemaining()) break;
+                BufferPool.getInstance().release(queue.poll());
+            }
         } catch (IOException e) {
             service.disconnectClient(key);
+            return;
         }
+
+        updateInterest(key, session);
+    }
+
+    // OP_WRITE finché c'è qualcosa in coda, OP_READ sospeso sopra metà della soglia
+    // o con troppe richieste ancora da eseguire (backpressure). Solo dal thread del loop.
+    static void updateInterest(SelectionKey key, ClientSession session) {
+        if (!key.isValid()) return;
+        int ops = 0;
+        if (!session.getOutboundQueue().isEmpty()) ops |= SelectionKey.OP_WRITE;
+        if (session.getOutboundBytes() <= ServerConfig.MAX_OUTBOUND_BYTES / 2
+                && session.getPendingRequests().get() < ServerConfig.MAX_IN_FLIGHT_PER_SESSION) ops |= SelectionKey.OP_READ;
+        if (key.interestOps() != ops) key.interestOps(ops);
     }
-}
\ No newline at end of file
+}
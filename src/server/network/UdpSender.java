@@ -1,53 +1,136 @@
 package server.network;
 
 import com.google.gson.Gson;
+import server.ServerConfig;
 import server.models.ClientSession;
 import server.ui.ServerLogger;
 import utils.ServerResponse;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.nio.charset.StandardCharsets;
-import java.util.Collection; 
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+/**
+ * Invio delle notifiche UDP a tutti i client loggati.
+ * Un solo DatagramChannel non bloccante per tutta la vita del server,
+ * usato da un thread dedicato: chi chiama broadcast() non aspetta il fan-out.
+ */
 public class UdpSender {
+    private static final UdpSender instance = new UdpSender();
+
+    // tentativi quando il buffer di invio del kernel è pieno, poi il pacchetto è perso
+    private static final int MAX_SEND_RETRIES = 50;
+    private static final long RETRY_WAIT_NANOS = 50_000;
+
     private final Gson gson = new Gson();
+    private DatagramChannel channel;
+    private ExecutorService sender;
+
+    // Metriche per l'amministrazione
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long lastFanoutMillis;
+    private volatile long lastRate; // pacchetti al secondo dell'ultimo broadcast
+
+    private UdpSender() {}
+
+    public static UdpSender getInstance() {
+        return instance;
+    }
 
-    public void broadcast(ServerResponse response, Collection<ClientSession> sessions) {
-        if (sessions == null || sessions.isEmpty()) return;
+    public synchronized void init() throws IOException {
+        if (channel != null) return;
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, ServerConfig.UDP_SEND_BUFFER);
+        sender = Executors.newSingleThreadExecutor(r -> new Thread(r, "udp-sender"));
+    }
+
+    public synchronized void close() {
+        if (sender != null) {
+            sender.shutdown();
+            try {
+                sender.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            try { channel.close(); } catch (IOException ignored) {}
+        }
+    }
 
-        String json = gson.toJson(response);
-        byte[] data = json.getBytes(StandardCharsets.UTF_8);
+    // Le sessioni vengono lette dal thread di invio, non da quello del chiamante
+    public void broadcast(ServerResponse response, Supplier<Collection<ClientSession>> sessions) {
+        if (sender == null || sender.isShutdown()) return;
 
-        try (DatagramSocket socket = new DatagramSocket()) {
+        // Evento codificato una volta sola in un buffer del pool
+        ByteBuffer data = TcpWriter.encode(gson.toJson(response), false);
+        try {
+            sender.execute(() -> fanOut(response, data, sessions.get()));
+        } catch (Exception e) {
+            BufferPool.getInstance().release(data);
+        }
+    }
+
+    private void fanOut(ServerResponse response, ByteBuffer data, Collection<ClientSession> sessions) {
+        long start = System.nanoTime();
+        long count = 0;
+        try {
             for (ClientSession session : sessions) {
-                // Invio solo agli utenti loggati che hanno una porta UDP valida (> 0)
-                if (session.isLoggedIn() && session.getUdpPort() > 0) {
-                    try {
-                        // L'indirizzo IP lo prendo dal canale TCP associato
-                        InetAddress address = session.getSelectionKey().channel() instanceof java.nio.channels.SocketChannel 
-                                ? ((java.nio.channels.SocketChannel) session.getSelectionKey().channel()).socket().getInetAddress()
-                                : InetAddress.getLocalHost(); // Fallback (es. test locale)
-
-                        DatagramPacket packet = new DatagramPacket(
-                            data, 
-                            data.length, 
-                            address, 
-                            session.getUdpPort()
-                        );
-                        
-                        socket.send(packet);
-                        
-                    } catch (Exception e) {
-                        ServerLogger.error("Errore invio UDP a " + session.getUsername() + ": " + e.getMessage());
-                    }
+                // Invio solo agli utenti loggati che hanno una porta UDP valida
+                InetSocketAddress target = session.getUdpAddress();
+                if (!session.isLoggedIn() || target == null) continue;
+
+                data.rewind();
+                if (sendOne(data, target, session)) count++;
+            }
+        } finally {
+            BufferPool.getInstance().release(data);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        broadcasts.increment();
+        lastFanoutMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        lastRate = (elapsed > 0) ? count * 1_000_000_000L / elapsed : count;
+        ServerLogger.info("Broadcast UDP inviato a " + count + " client in " + lastFanoutMillis + "ms: " + response.message);
+    }
+
+    private boolean sendOne(ByteBuffer data, InetSocketAddress target, ClientSession session) {
+        try {
+            for (int attempt = 0; attempt < MAX_SEND_RETRIES; attempt++) {
+                if (channel.send(data, target) > 0) {
+                    sent.increment();
+                    return true;
                 }
+                // buffer del kernel pieno: aspetto un attimo che si svuoti
+                LockSupport.parkNanos(RETRY_WAIT_NANOS);
             }
-            ServerLogger.info("Broadcast UDP inviato: " + response.message);
+            dropped.increment();
         } catch (IOException e) {
-            ServerLogger.error("Errore apertura socket UDP sender: " + e.getMessage());
+            failed.increment();
+            ServerLogger.error("Errore invio UDP a " + session.getUsername() + ": " + e.getMessage());
         }
+        return false;
+    }
+
+    // Riepilogo testuale per i comandi admin
+    public String describe() {
+        return "UDP: broadcast=" + broadcasts.sum()
+            + " inviati=" + sent.sum()
+            + " falliti=" + failed.sum()
+            + " scartati=" + dropped.sum()
+            + " ultimo fan-out=" + lastFanoutMillis + "ms (" + lastRate + " pacchetti/s)";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package server.services;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Scrittura "tutto o niente" di un file di dati:
+ * scrivo su un file temporaneo nella stessa cartella, forzo su disco e poi rinomino.
+ * Se il server cade a metà resta il vecchio file intatto, mai uno troncato.
+ */
+public class AtomicFile {
+
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private AtomicFile() {}
+
+    // Variante binaria: il contenuto è già tutto in memoria
+    public static void write(Path target, ByteBuffer content) throws IOException {
+        write(target, null, content);
+    }
+
+    public static void write(Path target, Content content) throws IOException {
+        write(target, content, null);
+    }
+
+    private static void write(Path target, Content content, ByteBuffer bytes) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        keepPermissions(tmp, target);
+
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (content != null) {
+                    Writer writer = new OutputStreamWriter(Channels.newOutputStream(ch), StandardCharsets.UTF_8);
+                    content.writeTo(writer);
+                    writer.flush();
+                } else {
+                    while (bytes.hasRemaining()) ch.write(bytes);
+                }
+                ch.force(true);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // createTempFile crea file leggibili solo dal proprietario: tengo i permessi del file originale
+    private static void keepPermissions(Path tmp, Path target) {
+        try {
+            Set<PosixFilePermission> perms = Files.exists(target)
+                ? Files.getPosixFilePermissions(target)
+                : PosixFilePermissions.fromString("rw-r--r--");
+            Files.setPosixFilePermissions(tmp, perms);
+        } catch (UnsupportedOperationException | IOException ignored) {
+            // file system non POSIX (es. Windows): restano i permessi di default
+        }
+    }
+}
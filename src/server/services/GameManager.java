@@ -2,120 +2,150 @@ package server.services;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 
 import server.ServerConfig;
+import server.models.ClientSession;
 import server.models.Game;
 import server.models.GameMatch; 
-import server.models.PlayerGameState;
+import server.models.Room;
 import server.ui.ServerLogger;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * 
  */
 public class GameManager {
-    private static GameManager instance;
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
     
-    // PARTITA CORRENTE 
-    private GameMatch currentMatch;
+    // STANZE: ognuna con la propria partita corrente
+    private final Room[] rooms;
 
-    // STORICO 
-    private ConcurrentHashMap<Integer, GameMatch> matchHistory;
+    // STORICO (su disco, in memoria solo le partite lette di recente)
+    private MatchArchive archive;
 
     private GameManager() {
-        matchHistory = new ConcurrentHashMap<>();
+        rooms = new Room[ServerConfig.ROOMS];
+        for (int i = 0; i < rooms.length; i++) rooms[i] = new Room(i);
         loadHistory();
     }
 
-    public static synchronized GameManager getInstance() {
-        if (instance == null) instance = new GameManager();
-        return instance;
+    // Holder idiom: creazione pigra e thread-safe garantita dall'inizializzazione della classe, senza lock a ogni chiamata
+    private static class Holder {
+        static final GameManager INSTANCE = new GameManager();
+    }
+
+    public static GameManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // STANZE
+
+    public Room[] getRooms() { return rooms; }
+
+    public Room getRoom(int index) { return rooms[index]; }
+
+    // Stanza assegnata al login: dipende solo dal nome, così chi si riconnette ritrova la sua partita
+    public Room roomFor(String username) {
+        return rooms[Math.floorMod(username.hashCode(), rooms.length)];
     }
 
     // CICLO DI VITA
 
-    public synchronized void setCurrentGame(Game nextGameDef) {
-        // 1. Archivia la partita precedente se esiste
-        if (this.currentMatch != null) {
-            matchHistory.put(currentMatch.getGameId(), currentMatch);
-            ServerLogger.info("Archivita partita ID " + currentMatch.getGameId() + " (Run " + currentMatch.getRunNumber() + ")");
-        }
-        
-        // 2. Calcola il prossimo run number
-        int nextRun = 1;
-        if (matchHistory.containsKey(nextGameDef.getGameId())) {
-            nextRun = matchHistory.get(nextGameDef.getGameId()).getRunNumber() + 1;
+    // Prepara la prossima partita della stanza durante il round in corso: compilata,
+    // con i payload già serializzati, ma invisibile ai giocatori fino a startNextMatch()
+    public GameMatch prepareNextMatch(Room room, Game nextGameDef) {
+        GameMatch match;
+        synchronized (this) {
+            // run number calcolato anche rispetto alle partite in corso o preparate nelle stanze
+            int lastRun = archive.getLastRun(nextGameDef.getGameId());
+            for (Room r : rooms) {
+                for (GameMatch m : new GameMatch[] { r.getCurrentMatch(), r.getNextMatch() }) {
+                    if (m != null && m != room.getNextMatch() && m.getGameId() == nextGameDef.getGameId()) {
+                        lastRun = Math.max(lastRun, m.getRunNumber());
+                    }
+                }
+            }
+            match = new GameMatch(nextGameDef, lastRun + 1);
+            room.setNextMatch(match);
         }
-
-        // 3. Crea la nuova partita (Tutto lo stato è incapsulato)
-        this.currentMatch = new GameMatch(nextGameDef, nextRun);
+        match.prewarm(); // fuori dal lock: non blocca le richieste
+        return match;
     }
 
+    // Cambio partita: la vecchia finisce nello storico, poi un solo assegnamento rende visibile la nuova
+    public void startNextMatch(Room room) {
+        GameMatch previous = room.getCurrentMatch();
+        if (previous != null) {
+            // finché non avviene lo scambio resta la corrente (getGameMatchById la trova comunque).
+            // Prima nell'archivio, poi nel journal: un checkpoint che tronca il record la trova già da scrivere
+            archive.put(previous);
+            Journal.getInstance().append(Journal.MATCH, previous);
+        }
+
+        GameMatch next;
+        synchronized (this) {
+            next = room.getNextMatch();
+            next.begin(); // il tempo parte da ora, non dalla preparazione
+            room.setCurrentMatch(next);
+            room.setNextMatch(null);
+        }
+        PuzzleCatalog.getInstance().started(next.getGameId()); // solo ora la rotazione avanza su disco
 
-    // Ritorna il Match corrente (dove i player giocano ora)
-    public synchronized GameMatch getCurrentMatch() { 
-        return currentMatch; 
+        if (previous != null) {
+            previous.setLive(false); // libera la cache dei payload
+            ServerLogger.info("Archivita partita ID " + previous.getGameId() + " (Run " + previous.getRunNumber() + ", " + room.getName() + ")");
+        }
     }
-    
-    // Helper per abbreviare il codice negli Handler
-    public Game getCurrentGameDefinition() {
-        return (currentMatch != null) ? currentMatch.getGameData() : null;
+
+    // Preparazione e scambio insieme (nessuna partita preparata in anticipo)
+    public void setCurrentGame(Room room, Game nextGameDef) {
+        prepareNextMatch(room, nextGameDef);
+        startNextMatch(room);
     }
-    
-    public int getTimeLeft() {
-        return (currentMatch != null) ? currentMatch.getTimeLeft() : 0;
+
+
+    // Ritorna il Match corrente della stanza (dove i player giocano ora).
+    // Lettura senza lock: il riferimento è volatile e la partita viene pubblicata già completa
+    public GameMatch getCurrentMatch(Room room) { 
+        return room.getCurrentMatch(); 
     }
-    
-    // Delega al Match corrente
-    public PlayerGameState getOrCreatePlayerState(String username) {
-        if (currentMatch == null) return new PlayerGameState(); // Fallback safe
-        return currentMatch.getOrCreatePlayerState(username);
+
+    // Partita corrente della stanza del giocatore (prima stanza se non ha fatto login)
+    public GameMatch getCurrentMatch(ClientSession session) {
+        Room room = session.getRoom();
+        return getCurrentMatch(room != null ? room : rooms[0]);
     }
 
-    // Recupera dallo storico o ritorna il corrente se l'ID coincide
+    // Recupera dallo storico o ritorna una partita in corso se l'ID coincide
     public GameMatch getGameMatchById(int gameId) {
-        // Se chiedono la partita attiva
-        if (currentMatch != null && currentMatch.getGameId() == gameId) {
-            return currentMatch;
+        // Se chiedono una partita attiva (una partita appena sostituita è già nello storico)
+        for (Room r : rooms) {
+            GameMatch m = r.getCurrentMatch();
+            if (m != null && m.getGameId() == gameId) return m;
         }
-        // Altrimenti cerco nello storico
-        return matchHistory.get(gameId);
+        // Altrimenti cerco nello storico (caricata da disco se non è in cache)
+        return archive.get(gameId);
     }
 
     // PERSISTENZA
 
+    // Archivio su disco + partite archiviate dopo l'ultimo checkpoint (dal journal)
     private void loadHistory() {
-        File file = new File(ServerConfig.HISTORY_FILE_PATH);
-        if (!file.exists()) { matchHistory = new ConcurrentHashMap<>(); return; }
-        try (FileReader reader = new FileReader(file)) {
-            // Leggiamo direttamente GameMatch!
-            Type type = new TypeToken<ConcurrentHashMap<Integer, GameMatch>>(){}.getType();
-            matchHistory = gson.fromJson(reader, type);
-            if (matchHistory == null) matchHistory = new ConcurrentHashMap<>();
-            ServerLogger.info("Storico caricato: " + matchHistory.size() + " partite.");
-        } catch (IOException e) {
-            ServerLogger.error("Errore caricamento storico: " + e.getMessage());
-            matchHistory = new ConcurrentHashMap<>();
-        }
+        archive = new MatchArchive();
+        Journal.getInstance().replay(Journal.MATCH, json -> {
+            GameMatch m = gson.fromJson(json, GameMatch.class);
+            m.upgradeLegacyState();
+            archive.put(m);
+        });
     }
 
-    public void saveData() {
-        File file = new File(ServerConfig.HISTORY_FILE_PATH);
-        if (file.getParentFile() != null) file.getParentFile().mkdirs();
-        
-        try (FileWriter writer = new FileWriter(file)) {
-            // Salviamo lo stato attuale dello storico
-            gson.toJson(matchHistory, writer);
-        } catch (IOException e) {
-            ServerLogger.error("Errore salvataggio storico: " + e.getMessage());
-        }
+    // Le partite sono già scritte una per una: qui si aspetta solo che siano su disco
+    public boolean saveData() {
+        return archive.flush();
     }
-}
\ No newline at end of file
+
+    public void close() {
+        archive.close();
+    }
+
+    public String describeHistory() { return archive.describe(); }
+}
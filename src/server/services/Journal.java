@@ -0,0 +1,236 @@
+package server.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import server.ServerConfig;
+import server.ui.ServerLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Log append-only a segmenti (data/journal/journal-NNNNNNNNNN.log).
+ * Ogni riga è un record JSON compatto {"t": tipo, "d": stato completo}:
+ * riapplicare lo stesso record più volte dà lo stesso risultato, quindi all'avvio
+ * basta caricare lo snapshot e rileggere in ordine tutti i segmenti rimasti.
+ *
+ * Le scritture vanno subito al sistema operativo, il force() su disco lo fa
+ * un thread a intervalli (group commit). Il checkpoint di PersistenceService
+ * chiude il segmento, salva lo snapshot e poi cancella i segmenti vecchi.
+ */
+public class Journal {
+    public static final String USER = "U";   // stato completo di un utente
+    public static final String MATCH = "M";  // partita archiviata
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private static Journal instance;
+
+    private final Gson gson = new Gson();
+    private final Path dir;
+    private final Object lock = new Object();
+    private final ScheduledExecutorService syncer;
+
+    private FileChannel current;
+    private long currentSeq;
+    private long currentSize;
+    private boolean unsynced;
+    private boolean closed;
+
+    private Journal() {
+        dir = Paths.get(ServerConfig.JOURNAL_DIR);
+        try {
+            Files.createDirectories(dir);
+            List<Long> existing = listSegments();
+            // i segmenti esistenti sono da rileggere, si scrive sempre su uno nuovo
+            openSegment(existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1);
+        } catch (IOException e) {
+            ServerLogger.error("Impossibile aprire il journal: " + e.getMessage());
+            closed = true;
+        }
+
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        long ms = ServerConfig.JOURNAL_SYNC_MILLIS;
+        syncer.scheduleWithFixedDelay(this::sync, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized Journal getInstance() {
+        if (instance == null) instance = new Journal();
+        return instance;
+    }
+
+    // SCRITTURA
+
+    // Va chiamato dentro il lock dell'oggetto registrato, così l'ordine dei record è quello delle modifiche
+    public void append(String type, Object state) {
+        JsonObject record = new JsonObject();
+        record.addProperty("t", type);
+        record.add("d", gson.toJsonTree(state));
+        byte[] line = (gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        synchronized (lock) {
+            if (closed) return;
+            try {
+                if (currentSize >= ServerConfig.JOURNAL_SEGMENT_BYTES) rollLocked();
+                ByteBuffer buf = ByteBuffer.wrap(line);
+                while (buf.hasRemaining()) current.write(buf);
+                currentSize += line.length;
+                unsynced = true;
+            } catch (IOException e) {
+                ServerLogger.error("Errore scrittura journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Group commit: un solo force() per tutti i record arrivati nell'intervallo
+    private void sync() {
+        synchronized (lock) {
+            if (closed || !unsynced) return;
+            try {
+                current.force(false);
+                unsynced = false;
+            } catch (IOException e) {
+                ServerLogger.error("Errore sync journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // CHECKPOINT
+
+    /**
+     * Chiude il segmento corrente e ne apre uno nuovo.
+     * Ritorna il numero del nuovo segmento: tutto ciò che sta prima è coperto
+     * da uno snapshot preso DOPO questa chiamata.
+     */
+    public long roll() {
+        synchronized (lock) {
+            if (closed) return -1;
+            try {
+                rollLocked();
+            } catch (IOException e) {
+                ServerLogger.error("Errore rotazione journal: " + e.getMessage());
+                return -1;
+            }
+            return currentSeq;
+        }
+    }
+
+    // Lo snapshot è su disco: i segmenti precedenti non servono più
+    public void truncateBefore(long seq) {
+        if (seq < 0) return;
+        try {
+            for (long s : listSegments()) {
+                if (s < seq) Files.deleteIfExists(segmentPath(s));
+            }
+        } catch (IOException e) {
+            ServerLogger.error("Errore pulizia journal: " + e.getMessage());
+        }
+    }
+
+    // RIPRISTINO
+
+    // Rilegge in ordine i record del tipo richiesto dai segmenti precedenti all'avvio
+    public void replay(String type, Consumer<JsonElement> apply) {
+        int applied = 0;
+        try {
+            for (long s : listSegments()) {
+                if (s >= currentSeq) break;
+                try (BufferedReader reader = Files.newBufferedReader(segmentPath(s), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isEmpty()) continue;
+                        JsonElement data;
+                        try {
+                            JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+                            if (!type.equals(record.get("t").getAsString())) continue;
+                            data = record.get("d");
+                        } catch (RuntimeException e) {
+                            continue; // riga troncata da un crash (anche JSON valido ma senza campi)
+                        }
+                        apply.accept(data);
+                        applied++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ServerLogger.error("Errore lettura journal: " + e.getMessage());
+        }
+        if (applied > 0) ServerLogger.info("Journal: riapplicati " + applied + " record di tipo " + type);
+    }
+
+    public void close() {
+        syncer.shutdown();
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            try {
+                current.force(false);
+                current.close();
+            } catch (IOException e) {
+                ServerLogger.error("Errore chiusura journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // UTILITY
+
+    private void rollLocked() throws IOException {
+        current.force(false);
+        current.close();
+        unsynced = false;
+        openSegment(currentSeq + 1);
+    }
+
+    private void openSegment(long seq) throws IOException {
+        current = FileChannel.open(segmentPath(seq), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        currentSeq = seq;
+        currentSize = current.size();
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("%s%010d%s", PREFIX, seq, SUFFIX));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                try {
+                    seqs.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        Collections.sort(seqs);
+        return seqs;
+    }
+
+    public String describe() {
+        synchronized (lock) {
+            return "Journal: segmento=" + currentSeq + " (" + currentSize + " byte)";
+        }
+    }
+}
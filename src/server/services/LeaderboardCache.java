@@ -0,0 +1,125 @@
+package server.services;
+
+import com.google.gson.Gson;
+
+import server.ServerConfig;
+import utils.PreSerializedList;
+import utils.ServerResponse.RankingEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classifica già serializzata, condivisa da tutte le richieste /rank, in due copie:
+ * i primi K (leaderboardSize) e la classifica completa servita da /rank senza argomenti.
+ * Ogni cambio di punteggio incrementa la versione della copia completa, e di quella
+ * dei primi K solo se può entrarci; una copia viene ricostruita solo alla prima richiesta
+ * dopo un cambio, e comunque non più spesso di una volta ogni leaderboardRefreshMillis.
+ */
+public class LeaderboardCache {
+    private static final Gson gson = new Gson();
+
+    private final RankingIndex ranking;
+    private final View topView = new View(false);
+    private final View fullView = new View(true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    private static class Snapshot {
+        final long version;
+        final long builtAt;
+        final PreSerializedList<RankingEntry> entries;
+        final int minScore; // punteggio dell'ultimo in lista
+
+        Snapshot(long version, PreSerializedList<RankingEntry> entries) {
+            this.version = version;
+            this.builtAt = System.currentTimeMillis();
+            this.entries = entries;
+            this.minScore = entries.isEmpty() ? Integer.MIN_VALUE : entries.get(entries.size() - 1).score;
+        }
+    }
+
+    // Una copia versionata: primi LEADERBOARD_SIZE o classifica completa
+    private class View {
+        final boolean full;
+        final AtomicLong version = new AtomicLong();
+        volatile Snapshot snapshot;
+        volatile boolean rebuilding;
+
+        View(boolean full) {
+            this.full = full;
+        }
+
+        Snapshot current() {
+            Snapshot s = snapshot;
+            if (isFresh(s)) {
+                hits.increment();
+                return s;
+            }
+            synchronized (this) {
+                s = snapshot;
+                if (isFresh(s)) return s; // l'ha già ricostruita un altro thread
+
+                rebuilding = true;
+                try {
+                    long v = version.get();
+                    s = new Snapshot(v, PreSerializedList.of(toEntries(ranking.top(full ? 0 : ServerConfig.LEADERBOARD_SIZE)), gson));
+                    snapshot = s;
+                    rebuilds.increment();
+                } finally {
+                    rebuilding = false;
+                }
+                return s;
+            }
+        }
+
+        // valida se nessun cambio rilevante, o se è troppo presto per ricostruirla
+        private boolean isFresh(Snapshot s) {
+            return s != null && (s.version == version.get()
+                || System.currentTimeMillis() - s.builtAt < ServerConfig.LEADERBOARD_REFRESH_MILLIS);
+        }
+    }
+
+    public LeaderboardCache(RankingIndex ranking) {
+        this.ranking = ranking;
+    }
+
+    // Chiamato dopo aver aggiornato l'indice: la copia completa cambia sempre,
+    // quella dei primi K solo se il cambio può entrarci
+    public void onChange(int oldScore, int newScore) {
+        fullView.version.incrementAndGet();
+
+        Snapshot s = topView.snapshot;
+        if (topView.rebuilding || s == null || s.entries.size() < ServerConfig.LEADERBOARD_SIZE
+                || Math.max(oldScore, newScore) >= s.minScore) {
+            topView.version.incrementAndGet();
+        }
+    }
+
+    // k <= 0: classifica completa dalla sua copia; k <= K dalla copia dei primi K;
+    // oltre K direttamente dall'indice
+    public List<RankingEntry> top(int k) {
+        if (k <= 0) return fullView.current().entries;
+        if (k > ServerConfig.LEADERBOARD_SIZE) return toEntries(ranking.top(k));
+
+        PreSerializedList<RankingEntry> cached = topView.current().entries;
+        if (k >= cached.size()) return cached;
+        return new ArrayList<>(cached.subList(0, k));
+    }
+
+    private static List<RankingEntry> toEntries(List<RankingIndex.Entry> top) {
+        List<RankingEntry> result = new ArrayList<>(top.size());
+        int rank = 1;
+        for (RankingIndex.Entry e : top) {
+            result.add(new RankingEntry(rank++, e.user.getUsername(), e.score));
+        }
+        return result;
+    }
+
+    public String describe() {
+        return "Classifica: versione=" + topView.version.get() + "/" + fullView.version.get() + " ricostruzioni=" + rebuilds.sum() + " hit=" + hits.sum();
+    }
+}
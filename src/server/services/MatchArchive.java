@@ -0,0 +1,246 @@
+package server.services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+
+import server.ServerConfig;
+import server.models.GameMatch;
+import server.ui.ServerLogger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storico delle partite su disco, un file per partita:
+ * data/history/<gameId / 100>/<gameId>-r<run>.json (solo l'ultima run di ogni gameId).
+ * In memoria restano solo l'indice gameId -> run (dai nomi dei file) e una LRU
+ * delle partite lette di recente, quindi la memoria non cresce con le partite giocate.
+ * Le scritture sono fatte da un thread dedicato.
+ */
+public class MatchArchive {
+    private static final int BUCKET = 100; // partite per cartella
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Path dir = Paths.get(ServerConfig.HISTORY_DIR);
+
+    // gameId -> ultima run archiviata
+    private final ConcurrentHashMap<Integer, Integer> runs = new ConcurrentHashMap<>();
+
+    // partite in attesa di scrittura: lette da qui finché non sono su disco
+    private final ConcurrentHashMap<Integer, GameMatch> pending = new ConcurrentHashMap<>();
+
+    // LRU delle partite lette di recente
+    private final Map<Integer, GameMatch> cache = new LinkedHashMap<Integer, GameMatch>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, GameMatch> eldest) {
+            return size() > ServerConfig.HISTORY_CACHE_SIZE;
+        }
+    };
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Future<?> lastWrite;
+
+    public MatchArchive() {
+        try {
+            Files.createDirectories(dir);
+            scanIndex();
+            migrateLegacyFile();
+        } catch (IOException e) {
+            ServerLogger.error("Errore apertura storico: " + e.getMessage());
+        }
+        ServerLogger.info("Storico: " + runs.size() + " partite archiviate.");
+    }
+
+    // SCRITTURA
+
+    public void put(GameMatch match) {
+        int id = match.getGameId();
+        pending.put(id, match);
+        Integer oldRun = runs.put(id, match.getRunNumber());
+        synchronized (cache) { cache.put(id, match); }
+
+        lastWrite = writer.submit(() -> store(match, oldRun));
+    }
+
+    // Aspetta che le partite archiviate finora siano su disco (per il checkpoint).
+    // Le scritture fallite restano in pending e vengono ritentate qui, sul thread di scrittura
+    public boolean flush() {
+        if (!await(lastWrite)) return false;
+        if (pending.isEmpty()) return true;
+
+        ServerLogger.info("Storico: nuovo tentativo per " + pending.size() + " partite non salvate");
+        Future<?> retry = writer.submit(() -> {
+            for (GameMatch m : pending.values()) {
+                if (store(m, null)) deleteOlderRuns(m);
+            }
+        });
+        return await(retry) && pending.isEmpty();
+    }
+
+    private boolean await(Future<?> f) {
+        if (f == null) return true;
+        try {
+            f.get(30, TimeUnit.SECONDS);
+            return true;
+        } catch (Exception e) {
+            ServerLogger.error("Errore attesa scrittura storico: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // LETTURA
+
+    public GameMatch get(int gameId) {
+        GameMatch m = pending.get(gameId);
+        if (m != null) return m;
+
+        synchronized (cache) {
+            m = cache.get(gameId);
+            if (m != null) return m;
+        }
+
+        Integer run = runs.get(gameId);
+        if (run == null) return null;
+
+        m = readMatch(pathFor(gameId, run));
+        if (m != null) {
+            synchronized (cache) { cache.putIfAbsent(gameId, m); }
+        }
+        return m;
+    }
+
+    // Numero dell'ultima run archiviata (0 se mai giocata)
+    public int getLastRun(int gameId) {
+        return runs.getOrDefault(gameId, 0);
+    }
+
+    public int size() { return runs.size(); }
+
+    // UTILITY
+
+    // Solo dal thread di scrittura: la partita esce da pending quando è su disco
+    private boolean store(GameMatch match, Integer oldRun) {
+        try {
+            writeMatch(match, oldRun);
+        } catch (IOException e) {
+            ServerLogger.error("Errore salvataggio partita " + match.getGameId() + ": " + e.getMessage());
+            return false;
+        }
+        pending.remove(match.getGameId(), match);
+        return true;
+    }
+
+    private void writeMatch(GameMatch match, Integer oldRun) throws IOException {
+        Path target = pathFor(match.getGameId(), match.getRunNumber());
+        AtomicFile.write(target, w -> gson.toJson(match, w));
+        if (oldRun != null && oldRun != match.getRunNumber()) {
+            Files.deleteIfExists(pathFor(match.getGameId(), oldRun));
+        }
+    }
+
+    // Nel nuovo tentativo la run sostituita non è più nota: cancello tutte quelle precedenti
+    private void deleteOlderRuns(GameMatch match) {
+        Path bucket = pathFor(match.getGameId(), match.getRunNumber()).getParent();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(bucket, match.getGameId() + "-r*.json")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                try {
+                    int run = Integer.parseInt(name.substring(name.indexOf("-r") + 2, name.length() - ".json".length()));
+                    if (run < match.getRunNumber()) Files.deleteIfExists(f);
+                } catch (NumberFormatException ignored) {}
+            }
+        } catch (IOException e) {
+            ServerLogger.error("Errore pulizia storico partita " + match.getGameId() + ": " + e.getMessage());
+        }
+    }
+
+    private GameMatch readMatch(Path file) {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            GameMatch m = gson.fromJson(reader, GameMatch.class);
+            if (m != null) m.upgradeLegacyState();
+            return m;
+        } catch (IOException | RuntimeException e) {
+            ServerLogger.error("Errore lettura partita " + file.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Path pathFor(int gameId, int run) {
+        return dir.resolve(String.valueOf(gameId / BUCKET)).resolve(gameId + "-r" + run + ".json");
+    }
+
+    // L'indice si ricostruisce dai soli nomi dei file, senza leggerli
+    private void scanIndex() throws IOException {
+        try (DirectoryStream<Path> buckets = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path bucket : buckets) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(bucket, "*-r*.json")) {
+                    for (Path f : files) {
+                        String name = f.getFileName().toString();
+                        int sep = name.indexOf("-r");
+                        try {
+                            int id = Integer.parseInt(name.substring(0, sep));
+                            int run = Integer.parseInt(name.substring(sep + 2, name.length() - ".json".length()));
+                            runs.merge(id, run, Math::max);
+                        } catch (NumberFormatException ignored) {}
+                    }
+                }
+            }
+        }
+    }
+
+    // Vecchio formato: tutto lo storico in GamesHistory.json. Lo converto una volta sola, in streaming
+    private void migrateLegacyFile() throws IOException {
+        Path legacy = Paths.get(ServerConfig.HISTORY_FILE_PATH);
+        if (!Files.exists(legacy)) return;
+
+        int migrated = 0;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(legacy, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                GameMatch m = gson.fromJson(reader, GameMatch.class);
+                if (m == null || m.getRunNumber() < getLastRun(m.getGameId())) continue;
+                m.upgradeLegacyState();
+                writeMatch(m, runs.put(m.getGameId(), m.getRunNumber()));
+                migrated++;
+            }
+            reader.endObject();
+        }
+
+        Files.move(legacy, legacy.resolveSibling(legacy.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        ServerLogger.info("Storico migrato: " + migrated + " partite da " + legacy.getFileName());
+    }
+
+    public String describe() {
+        int cached;
+        synchronized (cache) { cached = cache.size(); }
+        return "Storico: partite=" + runs.size() + " in cache=" + cached + " da scrivere=" + pending.size();
+    }
+}
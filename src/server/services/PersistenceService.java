@@ -1,18 +1,37 @@
 package server.services;
 
+import server.ServerConfig;
 import server.ui.ServerLogger;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Checkpoint periodico: ogni modifica è già nel Journal, qui si compatta il journal
+ * negli snapshot (Users.json, GamesHistory.json) e si cancellano i segmenti vecchi.
+ * Gira a intervalli regolari, o prima se gli utenti modificati superano la soglia.
+ */
 public class PersistenceService {
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final int SAVE_INTERVAL_SECONDS = 30; // Salva ogni 30 secondi
+    private final AtomicBoolean earlyFlushPending = new AtomicBoolean();
 
     public void start() {
+        int interval = ServerConfig.SAVE_INTERVAL_SECONDS;
+
         // Avvio salvataggio periodico
-        scheduler.scheduleAtFixedRate(this::saveAll, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(this::saveAll, interval, interval, TimeUnit.SECONDS);
+
+        // Troppi utenti in attesa: salvo subito, sempre sullo stesso thread
+        UserManager.getInstance().setFlushListener(() -> {
+            if (earlyFlushPending.compareAndSet(false, true) && !scheduler.isShutdown()) {
+                scheduler.execute(() -> {
+                    earlyFlushPending.set(false);
+                    saveAll();
+                });
+            }
+        });
         
         // Shutdown Hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -21,22 +40,35 @@ public class PersistenceService {
             ServerLogger.info("Dati salvati. Bye!");
         }));
         
-        ServerLogger.info("Servizio di Persistenza avviato (Intervallo: " + SAVE_INTERVAL_SECONDS + "s)");
+        ServerLogger.info("Servizio di Persistenza avviato (Intervallo: " + interval + "s)");
     }
 
     // Metodo unico per salvare 
-    private void saveAll() {
+    private synchronized void saveAll() {
         try {
-            UserManager.getInstance().saveData();
-            GameManager.getInstance().saveData();
-            ServerLogger.info("Salvataggio periodico completato.");
+            long start = System.nanoTime();
+
+            // 1. Nuovo segmento: quelli precedenti sono coperti dallo snapshot che segue
+            long seq = Journal.getInstance().roll();
+
+            // 2. Snapshot (solo dei dati cambiati)
+            int users = UserManager.getInstance().saveData();
+            boolean history = GameManager.getInstance().saveData();
+
+            // 3. Compattazione: i vecchi segmenti si cancellano solo se lo snapshot è andato a buon fine
+            if (users >= 0 && history) Journal.getInstance().truncateBefore(seq);
+
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            ServerLogger.info("Salvataggio periodico completato (" + Math.max(users, 0) + " utenti modificati, " + ms + "ms).");
         } catch (Exception e) {
             ServerLogger.error("Errore durante il salvataggio periodico: " + e.getMessage());
         }
     }
 
     public void stop() {
-        saveAll();
         scheduler.shutdown();
+        saveAll();
+        GameManager.getInstance().close();
+        Journal.getInstance().close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,291 @@
+package server.services;
+
+import com.google.gson.Gson;
+
+import server.ServerConfig;
+import server.models.Game;
+import server.ui.ServerLogger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Catalogo dei puzzle di Connections_Data.json con accesso diretto.
+ * Al primo avvio scandisce il file una volta e salva accanto un indice
+ * (gameId -> posizione in byte), riusato finché il file dati non cambia.
+ * Ogni Game si legge dal file mappato in memoria deserializzando solo i suoi byte.
+ *
+ * L'ordine di gioco (sequenziale o mescolato) e la posizione raggiunta sono salvati
+ * in un piccolo file di stato, così dopo un riavvio si riprende dalla stessa partita.
+ */
+public class PuzzleCatalog {
+    private static final int INDEX_MAGIC = 0x50434958; // "PCIX"
+
+    private static PuzzleCatalog instance;
+
+    private final Gson gson = new Gson();
+    private final Path dataFile = Paths.get(ServerConfig.DATA_FILE_PATH);
+    private final Path indexFile = Paths.get(ServerConfig.DATA_FILE_PATH + ".idx");
+    private final Path stateFile = Paths.get(ServerConfig.ROTATION_STATE_PATH);
+
+    private MappedByteBuffer data;
+
+    // indice: posizione i -> gameId, offset, lunghezza del puzzle nel file
+    private int[] ids;
+    private long[] offsets;
+    private int[] lengths;
+
+    // rotazione
+    private final boolean shuffle = "shuffle".equalsIgnoreCase(ServerConfig.PUZZLE_ORDER);
+    private int[] order;
+    private long seed;
+    private int cycle;
+    private int cursor;       // posizione in order della partita corrente
+    private boolean resuming; // la prossima next() rigioca la partita al cursore
+
+    // posizione nella rotazione di un puzzle consegnato da next()
+    private static class Position {
+        final long seed;
+        final int cycle;
+        final int cursor;
+
+        Position(long seed, int cycle, int cursor) {
+            this.seed = seed;
+            this.cycle = cycle;
+            this.cursor = cursor;
+        }
+    }
+
+    private final Map<Integer, Position> pending = new HashMap<>(); // gameId -> posizione, preparati ma non iniziati
+    private Position saved; // ultima posizione salvata su disco
+
+    private PuzzleCatalog() throws IOException {
+        try (FileChannel ch = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            data = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (!loadIndex()) {
+            buildIndex();
+            saveIndex();
+        }
+        loadState();
+        ServerLogger.info("Catalogo: " + ids.length + " puzzle, ordine " + (shuffle ? "mescolato" : "sequenziale"));
+    }
+
+    public static synchronized PuzzleCatalog getInstance() {
+        if (instance == null) {
+            try {
+                instance = new PuzzleCatalog();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Catalogo puzzle non disponibile", e);
+            }
+        }
+        return instance;
+    }
+
+    // ACCESSO
+
+    // Prossimo puzzle secondo la rotazione: al riavvio il primo è quello interrotto.
+    // La posizione si salva solo quando la partita inizia davvero (started)
+    public synchronized Game next() {
+        if (ids.length == 0) throw new IllegalStateException("Nessun puzzle nel catalogo");
+
+        if (resuming) {
+            resuming = false; // riparto dalla partita salvata
+        } else if (++cursor >= order.length) {
+            ServerLogger.info("Fine file partite. Ricomincio il ciclo.");
+            newCycle();
+        }
+        pending.put(ids[order[cursor]], new Position(seed, cycle, cursor));
+        return readAt(order[cursor]);
+    }
+
+    // La partita con questo puzzle è iniziata: da qui riparte la rotazione dopo un riavvio.
+    // Un puzzle preparato e mai giocato non viene salvato, quindi non si salta
+    public synchronized void started(int gameId) {
+        Position p = pending.remove(gameId);
+        if (p == null) return;
+        // con più stanze gli avvii possono arrivare fuori ordine: la posizione salvata non torna indietro
+        if (saved != null && (p.cycle < saved.cycle || (p.cycle == saved.cycle && p.cursor < saved.cursor))) return;
+        saved = p;
+        saveState(p);
+    }
+
+    public int size() { return ids.length; }
+
+    private Game readAt(int pos) {
+        ByteBuffer slice = data.duplicate();
+        slice.position((int) offsets[pos]).limit((int) offsets[pos] + lengths[pos]);
+        return gson.fromJson(StandardCharsets.UTF_8.decode(slice).toString(), Game.class);
+    }
+
+    // INDICE
+
+    // Scansione a byte dell'array JSON: ogni oggetto di primo livello è un puzzle
+    private void buildIndex() {
+        int n = data.limit();
+        int capacity = 1024;
+        ids = new int[capacity];
+        offsets = new long[capacity];
+        lengths = new int[capacity];
+        int count = 0;
+
+        int depth = 0;
+        int start = -1;
+        boolean inString = false, escape = false;
+        for (int i = 0; i < n; i++) {
+            byte b = data.get(i);
+            if (inString) {
+                if (escape) escape = false;
+                else if (b == '\\') escape = true;
+                else if (b == '"') inString = false;
+                continue;
+            }
+            switch (b) {
+                case '"': inString = true; break;
+                case '[': depth++; break;
+                case ']': depth--; break;
+                case '{':
+                    depth++;
+                    if (depth == 2) start = i;
+                    break;
+                case '}':
+                    if (depth == 2) {
+                        if (count == ids.length) {
+                            capacity *= 2;
+                            ids = Arrays.copyOf(ids, capacity);
+                            offsets = Arrays.copyOf(offsets, capacity);
+                            lengths = Arrays.copyOf(lengths, capacity);
+                        }
+                        offsets[count] = start;
+                        lengths[count] = i + 1 - start;
+                        count++;
+                    }
+                    depth--;
+                    break;
+                default:
+            }
+        }
+
+        ids = Arrays.copyOf(ids, count);
+        offsets = Arrays.copyOf(offsets, count);
+        lengths = Arrays.copyOf(lengths, count);
+        for (int i = 0; i < count; i++) ids[i] = readAt(i).getGameId();
+        ServerLogger.info("Indice del catalogo ricostruito (" + count + " puzzle).");
+    }
+
+    // L'indice vale solo per il file dati da cui è stato costruito (dimensione + data di modifica)
+    private boolean loadIndex() {
+        if (!Files.exists(indexFile)) return false;
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            if (in.getInt() != INDEX_MAGIC) return false;
+            if (in.getLong() != Files.size(dataFile)) return false;
+            if (in.getLong() != Files.getLastModifiedTime(dataFile).toMillis()) return false;
+
+            int count = in.getInt();
+            ids = new int[count];
+            offsets = new long[count];
+            lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.getInt();
+                offsets[i] = in.getLong();
+                lengths[i] = in.getInt();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            ServerLogger.error("Indice del catalogo non valido, lo ricostruisco: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void saveIndex() {
+        try {
+            ByteBuffer out = ByteBuffer.allocate(24 + ids.length * 16);
+            out.putInt(INDEX_MAGIC);
+            out.putLong(Files.size(dataFile));
+            out.putLong(Files.getLastModifiedTime(dataFile).toMillis());
+            out.putInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                out.putInt(ids[i]).putLong(offsets[i]).putInt(lengths[i]);
+            }
+            out.flip();
+            AtomicFile.write(indexFile, out);
+        } catch (IOException e) {
+            ServerLogger.error("Errore salvataggio indice catalogo: " + e.getMessage());
+        }
+    }
+
+    // STATO DELLA ROTAZIONE
+
+    private void newCycle() {
+        cycle++;
+        seed = new Random().nextLong();
+        cursor = 0;
+        buildOrder();
+    }
+
+    private void buildOrder() {
+        order = new int[ids.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        if (!shuffle) return;
+
+        // Fisher-Yates con seme salvato: lo stesso seme ridà lo stesso ordine
+        Random rnd = new Random(seed);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = order[i]; order[i] = order[j]; order[j] = tmp;
+        }
+    }
+
+    private void loadState() {
+        seed = new Random().nextLong();
+        int savedCursor = 0;
+        if (Files.exists(stateFile)) {
+            try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+                Properties p = new Properties();
+                p.load(reader);
+                // con un ordine diverso da quello salvato si riparte da capo
+                if (p.getProperty("order", "").equalsIgnoreCase(ServerConfig.PUZZLE_ORDER)
+                        && Integer.parseInt(p.getProperty("size", "-1")) == ids.length) {
+                    seed = Long.parseLong(p.getProperty("seed"));
+                    cycle = Integer.parseInt(p.getProperty("cycle", "0"));
+                    savedCursor = Integer.parseInt(p.getProperty("cursor", "0"));
+                }
+            } catch (IOException | RuntimeException e) {
+                ServerLogger.error("Stato rotazione non valido, riparto da capo: " + e.getMessage());
+            }
+        }
+        buildOrder();
+        cursor = (savedCursor >= 0 && savedCursor < order.length) ? savedCursor : 0;
+        resuming = true;
+        saved = new Position(seed, cycle, cursor);
+    }
+
+    private void saveState(Position pos) {
+        Properties p = new Properties();
+        p.setProperty("order", ServerConfig.PUZZLE_ORDER);
+        p.setProperty("size", String.valueOf(ids.length));
+        p.setProperty("seed", String.valueOf(pos.seed));
+        p.setProperty("cycle", String.valueOf(pos.cycle));
+        p.setProperty("cursor", String.valueOf(pos.cursor));
+        try {
+            AtomicFile.write(stateFile, w -> p.store(w, "Rotazione puzzle"));
+        } catch (IOException e) {
+            ServerLogger.error("Errore salvataggio stato rotazione: " + e.getMessage());
+        }
+    }
+}
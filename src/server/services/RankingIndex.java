@@ -0,0 +1,151 @@
+package server.services;
+
+import server.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Classifica mantenuta in ordine a ogni cambio di punteggio.
+ * Skip list "indicizzata": ogni collegamento sa quanti nodi salta (span),
+ * così oltre a scorrere i primi K in O(K) si calcola la posizione di un utente in O(log n).
+ * Ordine: punteggio decrescente, a parità di punti id crescente.
+ *
+ * Il punteggio usato per l'ordinamento è quello salvato nel nodo, non quello attuale dello User:
+ * chi modifica il punteggio deve chiamare update() con il valore vecchio e quello nuovo.
+ */
+public class RankingIndex {
+    private static final int MAX_LEVEL = 32;
+
+    private static class Node {
+        final User user;
+        final String id;
+        final int score;
+        final Node[] next;
+        final int[] span;
+
+        Node(User user, String id, int score, int level) {
+            this.user = user;
+            this.id = id;
+            this.score = score;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+    }
+
+    // Voce della classifica: lo User e il punteggio con cui è in classifica
+    public static class Entry {
+        public final User user;
+        public final int score;
+
+        Entry(User user, int score) { this.user = user; this.score = score; }
+    }
+
+    private final Node head = new Node(null, null, 0, MAX_LEVEL);
+    private int level = 1;
+    private int size;
+
+    // true se il nodo viene prima della chiave (score, id)
+    private static boolean before(Node n, int score, String id) {
+        return n.score > score || (n.score == score && n.id.compareTo(id) < 0);
+    }
+
+    private static int randomLevel() {
+        int lvl = 1;
+        while (lvl < MAX_LEVEL && ThreadLocalRandom.current().nextInt(4) == 0) lvl++;
+        return lvl;
+    }
+
+    public synchronized void insert(User user, int score) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        String id = user.getId();
+
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = (i == level - 1) ? 0 : rank[i + 1];
+            while (x.next[i] != null && before(x.next[i], score, id)) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        int lvl = randomLevel();
+        if (lvl > level) {
+            for (int i = level; i < lvl; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = lvl;
+        }
+
+        Node node = new Node(user, id, score, lvl);
+        for (int i = 0; i < lvl; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        for (int i = lvl; i < level; i++) update[i].span[i]++;
+        size++;
+    }
+
+    public synchronized boolean remove(String id, int score) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && before(x.next[i], score, id)) x = x.next[i];
+            update[i] = x;
+        }
+
+        x = x.next[0];
+        if (x == null || x.score != score || !x.id.equals(id)) return false;
+
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == x) {
+                update[i].span[i] += x.span[i] - 1;
+                update[i].next[i] = x.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) level--;
+        size--;
+        return true;
+    }
+
+    public synchronized void update(User user, int oldScore, int newScore) {
+        if (oldScore == newScore) return;
+        remove(user.getId(), oldScore);
+        insert(user, newScore);
+    }
+
+    // Posizione (da 1) dell'utente con quel punteggio, -1 se non c'è
+    public synchronized int rankOf(String id, int score) {
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && (before(x.next[i], score, id) || (x.next[i].score == score && x.next[i].id.equals(id)))) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x != head && x.id.equals(id)) return rank;
+        }
+        return -1;
+    }
+
+    // I primi k in ordine (tutti se k <= 0)
+    public synchronized List<Entry> top(int k) {
+        int n = (k <= 0) ? size : Math.min(k, size);
+        List<Entry> result = new ArrayList<>(n);
+        for (Node x = head.next[0]; x != null && result.size() < n; x = x.next[0]) {
+            result.add(new Entry(x.user, x.score));
+        }
+        return result;
+    }
+
+    public synchronized int size() { return size; }
+}
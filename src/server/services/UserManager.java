@@ -2,6 +2,8 @@ package server.services;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.google.gson.reflect.TypeToken;
 
 import server.ServerConfig;
@@ -12,10 +14,15 @@ import utils.ServerResponse.UserAccountInfo;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -25,14 +32,27 @@ public class UserManager {
     private static UserManager instance;
     private ConcurrentHashMap<String, User> usersById; 
     private ConcurrentHashMap<String, String> usernameIndex;
+    private final RankingIndex ranking = new RankingIndex(); // classifica sempre ordinata
+    private final LeaderboardCache leaderboard = new LeaderboardCache(ranking); // top-K e classifica completa già serializzati
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
     private final String usersFilePath = ServerConfig.USERS_FILE_PATH;
     private final Object writeLock = new Object();
 
+    // Utenti modificati dall'ultimo salvataggio: li scrive PersistenceService
+    private final Set<String> dirtyIds = ConcurrentHashMap.newKeySet();
+    private final Object flushLock = new Object();
+    private volatile Runnable flushListener; // chiamato quando i dirty superano la soglia
+
+    // Metriche di salvataggio
+    private final AtomicLong flushCount = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile int lastFlushDirty;
+
     private UserManager() { 
         usersById = new ConcurrentHashMap<>();
         usernameIndex = new ConcurrentHashMap<>();
         loadUsers(); 
+        buildRanking();
     }
 
     public static synchronized UserManager getInstance() {
@@ -63,7 +83,13 @@ public class UserManager {
             User newUser = new User(username, password);
             usersById.put(newUser.getId(), newUser);
             usernameIndex.put(username, newUser.getId());
-            saveData(); 
+            synchronized (newUser) {
+                // prima dirty, poi journal: un checkpoint che tronca il record salva anche l'utente
+                markDirty(newUser.getId());
+                Journal.getInstance().append(Journal.USER, newUser);
+                ranking.insert(newUser, newUser.getTotalScore());
+                leaderboard.onChange(newUser.getTotalScore(), newUser.getTotalScore());
+            }
             return true;
         }
     }
@@ -80,9 +106,13 @@ public class UserManager {
                 usernameIndex.remove(oldName);
                 usernameIndex.put(newName, id);
                 u.setUsername(newName);
+                leaderboard.onChange(u.getTotalScore(), u.getTotalScore()); // il nome può essere nella top
             }
             if (newPsw != null && !newPsw.isEmpty()) u.setPassword(newPsw);
-            saveData();
+            synchronized (u) {
+                markDirty(id);
+                Journal.getInstance().append(Journal.USER, u);
+            }
             return true;
         }
     }
@@ -91,15 +121,23 @@ public class UserManager {
         String id = usernameIndex.get(username);
         if (id != null) {
             usersById.computeIfPresent(id, (k, user) -> {
-                if (won) {
-                    // Aggiorno istogramma (0,1,2,3,4 errori)
-                    user.addWin(errors, points); 
-                } else {
-                    user.addLoss(points);
+                // modifica e record nel journal sotto lo stesso lock: l'ordine dei record è quello delle modifiche
+                synchronized (user) {
+                    int oldScore = user.getTotalScore();
+                    if (won) {
+                        // Aggiorno istogramma (0,1,2,3,4 errori)
+                        user.addWin(errors, points); 
+                    } else {
+                        user.addLoss(points);
+                    }
+                    ranking.update(user, oldScore, user.getTotalScore());
+                    leaderboard.onChange(oldScore, user.getTotalScore());
+                    // dirty prima del record: lo snapshot (che copia sotto questo lock) includerà la modifica
+                    markDirty(id);
+                    Journal.getInstance().append(Journal.USER, user);
                 }
                 return user;
             });
-            saveData(); 
         }
     }
     
@@ -109,47 +147,138 @@ public class UserManager {
     
     public User getUser(String username) { String id = usernameIndex.get(username); return (id != null) ? usersById.get(id) : null; }
 
+    // Classifica dall'indice: i primi K dalla cache, la posizione di un utente in O(log n)
     public List<RankingEntry> getLeaderboard(Integer topK, String specificUser) {
-        List<User> sortedUsers = usersById.values().stream()
-                .sorted((u1, u2) -> Integer.compare(u2.getTotalScore(), u1.getTotalScore()))
-                .collect(Collectors.toList());
         List<RankingEntry> result = new ArrayList<>();
-        int rank = 1;
-        for (User u : sortedUsers) {
-            if (specificUser != null && !specificUser.isEmpty()) {
-                if (u.getUsername().equals(specificUser)) {
-                    result.add(new RankingEntry(rank, u.getUsername(), u.getTotalScore()));
-                    return result;
-                }
-            } else {
-                result.add(new RankingEntry(rank, u.getUsername(), u.getTotalScore()));
-                if (topK != null && topK > 0 && result.size() >= topK) break;
+
+        if (specificUser != null && !specificUser.isEmpty()) {
+            User u = getUser(specificUser);
+            if (u == null) return result;
+            int score;
+            int rank;
+            synchronized (u) { // punteggio e indice cambiano insieme sotto questo lock
+                score = u.getTotalScore();
+                rank = ranking.rankOf(u.getId(), score);
             }
-            rank++;
+            if (rank > 0) result.add(new RankingEntry(rank, u.getUsername(), score));
+            return result;
+        }
+
+        // senza K tutta la classifica: anche questa dalla cache, come i K fino a LEADERBOARD_SIZE
+        return leaderboard.top(topK != null ? topK : 0);
+    }
+
+    public String describeLeaderboard() { return leaderboard.describe(); }
+
+    private void buildRanking() {
+        for (User u : usersById.values()) ranking.insert(u, u.getTotalScore());
+        if (!checkRankingConsistency()) ServerLogger.error("Classifica incoerente dopo il caricamento!");
+    }
+
+    /**
+     * Controllo di coerenza: confronta l'indice con l'ordinamento completo di tutti gli utenti.
+     * Costa O(n log n), da usare all'avvio o in debug.
+     */
+    public boolean checkRankingConsistency() {
+        List<User> sorted = new ArrayList<>(usersById.values());
+        sorted.sort((u1, u2) -> {
+            int c = Integer.compare(u2.getTotalScore(), u1.getTotalScore());
+            return (c != 0) ? c : u1.getId().compareTo(u2.getId());
+        });
+
+        List<RankingIndex.Entry> indexed = ranking.top(0);
+        if (indexed.size() != sorted.size()) return false;
+        for (int i = 0; i < sorted.size(); i++) {
+            User u = sorted.get(i);
+            RankingIndex.Entry e = indexed.get(i);
+            if (e.user != u || e.score != u.getTotalScore()) return false;
+            if (ranking.rankOf(u.getId(), u.getTotalScore()) != i + 1) return false;
         }
-        return result;
+        return true;
     }
 
+    // PERSISTENZA
+
+    private void markDirty(String id) {
+        if (dirtyIds.add(id) && dirtyIds.size() >= ServerConfig.USER_FLUSH_THRESHOLD) {
+            Runnable listener = flushListener;
+            if (listener != null) listener.run();
+        }
+    }
+
+    public void setFlushListener(Runnable listener) { this.flushListener = listener; }
+
+    public int getDirtyCount() { return dirtyIds.size(); }
+
+    // Snapshot (Users.json) + record del journal scritti dopo l'ultimo checkpoint
     private void loadUsers() {
         File file = new File(usersFilePath);
-        if (!file.exists()) return;
-        try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<ConcurrentHashMap<String, User>>(){}.getType();
-            ConcurrentHashMap<String, User> loaded = gson.fromJson(reader, type);
-            if (loaded != null) {
-                this.usersById = loaded;
-                this.usernameIndex.clear();
-                for (User u : usersById.values()) this.usernameIndex.put(u.getUsername(), u.getId());
-                ServerLogger.info("Caricati " + usersById.size() + " utenti.");
+        if (file.exists()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                Type type = new TypeToken<ConcurrentHashMap<String, User>>(){}.getType();
+                ConcurrentHashMap<String, User> loaded = gson.fromJson(reader, type);
+                if (loaded != null) this.usersById = loaded;
+            } catch (IOException e) { ServerLogger.error("Errore caricamento utenti: " + e.getMessage()); }
+        }
+
+        // i record riapplicati non sono nello snapshot: restano dirty finché il prossimo checkpoint non li salva
+        Journal.getInstance().replay(Journal.USER, json -> {
+            User u = gson.fromJson(json, User.class);
+            usersById.put(u.getId(), u);
+            dirtyIds.add(u.getId());
+        });
+
+        this.usernameIndex.clear();
+        for (User u : usersById.values()) this.usernameIndex.put(u.getUsername(), u.getId());
+        ServerLogger.info("Caricati " + usersById.size() + " utenti.");
+    }
+
+    /**
+     * Scrive Users.json solo se qualche utente è cambiato.
+     * Le modifiche arrivate nel frattempo restano segnate e vanno al giro dopo.
+     * Ritorna il numero di utenti modificati salvati, -1 se la scrittura è fallita.
+     */
+    public int saveData() {
+        if (usersById == null) return 0;
+        synchronized (flushLock) {
+            if (dirtyIds.isEmpty()) return 0;
+
+            // tolgo i dirty PRIMA della copia: una modifica successiva li rimette
+            List<String> flushed = new ArrayList<>(dirtyIds);
+            dirtyIds.removeAll(flushed);
+
+            long start = System.nanoTime();
+            try {
+                // copia coerente: ogni utente serializzato sotto il suo lock
+                JsonObject snapshot = new JsonObject();
+                for (Map.Entry<String, User> e : usersById.entrySet()) {
+                    User u = e.getValue();
+                    synchronized (u) {
+                        snapshot.add(e.getKey(), gson.toJsonTree(u));
+                    }
+                }
+                AtomicFile.write(Paths.get(usersFilePath), writer -> {
+                    JsonWriter json = gson.newJsonWriter(writer);
+                    gson.toJson(snapshot, json);
+                    json.flush();
+                });
+            } catch (IOException e) {
+                dirtyIds.addAll(flushed); // riprovo al prossimo giro
+                ServerLogger.error("Errore salvataggio utenti: " + e.getMessage());
+                return -1;
             }
-        } catch (IOException e) { ServerLogger.error("Errore caricamento utenti: " + e.getMessage()); }
+
+            lastFlushMillis = (System.nanoTime() - start) / 1_000_000;
+            lastFlushDirty = flushed.size();
+            flushCount.incrementAndGet();
+            return flushed.size();
+        }
     }
 
-    public void saveData() {
-        if (usersById == null) return;
-        File file = new File(usersFilePath);
-        if (file.getParentFile() != null) file.getParentFile().mkdirs();
-        try (FileWriter writer = new FileWriter(file)) { gson.toJson(usersById, writer); } 
-        catch (IOException e) { ServerLogger.error("Errore salvataggio utenti: " + e.getMessage()); }
+    // Riepilogo testuale per i comandi admin
+    public String describePersistence() {
+        return "Utenti: salvataggi=" + flushCount.get()
+            + " in attesa=" + dirtyIds.size()
+            + " ultimo=" + lastFlushDirty + " utenti in " + lastFlushMillis + "ms";
     }
-}
\ No newline at end of file
+}
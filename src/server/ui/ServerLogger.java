@@ -132,6 +132,11 @@ public class ServerLogger {
         logTraffic("TCP IN <- " + cleanSource, json);
     }
 
+    public static void logBinaryReceived(String source, String summary) {
+        String cleanSource = source.startsWith("/") ? source.substring(1) : source;
+        logTraffic("TCP IN <- " + cleanSource, summary + " (binario)");
+    }
+
     private static String timestamp() {
         return LocalTime.now().format(dtf);
     }
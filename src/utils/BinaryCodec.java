@@ -0,0 +1,546 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Protocollo binario alternativo al JSON a righe.
+ *
+ * Handshake: il client apre la connessione inviando MAGIC e VERSION, il server risponde
+ * con un Generic già in binario. Chi inizia con '{' continua a parlare JSON.
+ * Frame: lunghezza del payload (varint) + payload; il payload inizia con l'opcode.
+ * Le parole della griglia viaggiano come indice (0-15) nella griglia di 16 parole,
+ * con la stringa intera come ripiego quando la griglia non è nota.
+ */
+public class BinaryCodec {
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final byte VERSION = 1;
+
+    // Opcode richieste
+    private static final int OP_REGISTER = 1;
+    private static final int OP_LOGIN = 2;
+    private static final int OP_LOGOUT = 3;
+    private static final int OP_UPDATE_CREDENTIALS = 4;
+    private static final int OP_SUBMIT_PROPOSAL = 5;
+    private static final int OP_GAME_INFO = 6;
+    private static final int OP_GAME_STATS = 7;
+    private static final int OP_PLAYER_STATS = 8;
+    private static final int OP_LEADERBOARD = 9;
+    private static final int OP_ORACLE = 10;
+    private static final int OP_GOD = 11;
+    private static final int OP_SERVER_STATS = 12;
+
+    // Opcode risposte
+    private static final int RES_ERROR = 0x81;
+    private static final int RES_GENERIC = 0x82;
+    private static final int RES_EVENT = 0x83;
+    private static final int RES_AUTH = 0x84;
+    private static final int RES_PROPOSAL = 0x85;
+    private static final int RES_GAME_INFO = 0x86;
+    private static final int RES_GAME_STATS = 0x87;
+    private static final int RES_PLAYER_STATS = 0x88;
+    private static final int RES_LEADERBOARD = 0x89;
+    private static final int RES_ADMIN = 0x8A;
+
+    // Parola inviata per intero invece che come indice
+    private static final int INLINE_WORD = 0xFF;
+
+    // Griglia (parole nell'ordine mostrato al giocatore) per una partita, null se non disponibile
+    @FunctionalInterface
+    public interface GridProvider {
+        List<String> gridFor(int gameId);
+    }
+
+    // --- RICHIESTE ---
+
+    public static void encodeRequest(ClientRequest req, Writer w, Integer gridGameId, List<String> grid) {
+        if (req instanceof ClientRequest.Register) {
+            ClientRequest.Register r = (ClientRequest.Register) req;
+            w.writeByte(OP_REGISTER); w.writeString(r.name); w.writeString(r.psw);
+        } else if (req instanceof ClientRequest.Login) {
+            ClientRequest.Login r = (ClientRequest.Login) req;
+            w.writeByte(OP_LOGIN); w.writeString(r.username); w.writeString(r.psw); w.writeVarint(r.udpPort);
+        } else if (req instanceof ClientRequest.Logout) {
+            w.writeByte(OP_LOGOUT);
+        } else if (req instanceof ClientRequest.UpdateCredentials) {
+            ClientRequest.UpdateCredentials r = (ClientRequest.UpdateCredentials) req;
+            w.writeByte(OP_UPDATE_CREDENTIALS);
+            w.writeString(r.oldName); w.writeString(r.newName); w.writeString(r.oldPsw); w.writeString(r.newPsw);
+        } else if (req instanceof ClientRequest.SubmitProposal) {
+            ClientRequest.SubmitProposal r = (ClientRequest.SubmitProposal) req;
+            w.writeByte(OP_SUBMIT_PROPOSAL);
+            boolean useGrid = grid != null && gridGameId != null;
+            w.writeNullableInt(useGrid ? gridGameId : null);
+            w.writeWords(r.words, useGrid ? grid : null);
+        } else if (req instanceof ClientRequest.GameInfo) {
+            w.writeByte(OP_GAME_INFO); w.writeNullableInt(((ClientRequest.GameInfo) req).gameId);
+        } else if (req instanceof ClientRequest.RequestGameStats) {
+            w.writeByte(OP_GAME_STATS); w.writeNullableInt(((ClientRequest.RequestGameStats) req).gameId);
+        } else if (req instanceof ClientRequest.PlayerStats) {
+            w.writeByte(OP_PLAYER_STATS);
+        } else if (req instanceof ClientRequest.Leaderboard) {
+            ClientRequest.Leaderboard r = (ClientRequest.Leaderboard) req;
+            w.writeByte(OP_LEADERBOARD); w.writeString(r.playerName); w.writeNullableInt(r.topPlayers);
+        } else if (req instanceof ClientRequest.Oracle) {
+            w.writeByte(OP_ORACLE); w.writeString(((ClientRequest.Oracle) req).password);
+        } else if (req instanceof ClientRequest.God) {
+            w.writeByte(OP_GOD); w.writeString(((ClientRequest.God) req).password);
+        } else if (req instanceof ClientRequest.ServerStats) {
+            w.writeByte(OP_SERVER_STATS); w.writeString(((ClientRequest.ServerStats) req).password);
+        } else {
+            throw new IllegalArgumentException("Richiesta non supportata: " + req.operation);
+        }
+    }
+
+    public static ClientRequest decodeRequest(ByteBuffer in, GridProvider grids) {
+        int op = readUnsignedByte(in);
+        switch (op) {
+            case OP_REGISTER:
+                return new ClientRequest.Register(readString(in), readString(in));
+            case OP_LOGIN:
+                return new ClientRequest.Login(readString(in), readString(in), readVarint(in));
+            case OP_LOGOUT:
+                return new ClientRequest.Logout();
+            case OP_UPDATE_CREDENTIALS:
+                return new ClientRequest.UpdateCredentials(readString(in), readString(in), readString(in), readString(in));
+            case OP_SUBMIT_PROPOSAL: {
+                Integer gridGameId = readNullableInt(in);
+                List<String> grid = (gridGameId != null) ? grids.gridFor(gridGameId) : null;
+                return new ClientRequest.SubmitProposal(readWords(in, grid));
+            }
+            case OP_GAME_INFO: {
+                Integer id = readNullableInt(in);
+                return (id == null) ? new ClientRequest.GameInfo() : new ClientRequest.GameInfo(id);
+            }
+            case OP_GAME_STATS: {
+                Integer id = readNullableInt(in);
+                return (id == null) ? new ClientRequest.RequestGameStats() : new ClientRequest.RequestGameStats(id);
+            }
+            case OP_PLAYER_STATS:
+                return new ClientRequest.PlayerStats();
+            case OP_LEADERBOARD: {
+                ClientRequest.Leaderboard r = new ClientRequest.Leaderboard();
+                r.playerName = readString(in);
+                r.topPlayers = readNullableInt(in);
+                return r;
+            }
+            case OP_ORACLE:
+                return new ClientRequest.Oracle(readString(in));
+            case OP_GOD:
+                return new ClientRequest.God(readString(in));
+            case OP_SERVER_STATS:
+                return new ClientRequest.ServerStats(readString(in));
+            default:
+                throw new IllegalArgumentException("Opcode sconosciuto: " + op);
+        }
+    }
+
+    // --- RISPOSTE ---
+
+    public static void encodeResponse(ServerResponse r, Writer w) {
+        if (r instanceof ServerResponse.Error) {
+            w.writeByte(RES_ERROR); w.writeString(r.message); w.writeNullableInt(r.errorCode);
+        } else if (r instanceof ServerResponse.Generic) {
+            w.writeByte(RES_GENERIC); w.writeString(r.message);
+        } else if (r instanceof ServerResponse.Event) {
+            w.writeByte(RES_EVENT); w.writeString(r.message); w.writeNullableBool(((ServerResponse.Event) r).isFinished);
+        } else if (r instanceof ServerResponse.Auth) {
+            ServerResponse.Auth a = (ServerResponse.Auth) r;
+            w.writeByte(RES_AUTH); w.writeString(r.message);
+            w.writeBool(a.gameInfo != null);
+            if (a.gameInfo != null) writeGameInfoBody(a.gameInfo, w);
+        } else if (r instanceof ServerResponse.Proposal) {
+            ServerResponse.Proposal p = (ServerResponse.Proposal) r;
+            w.writeByte(RES_PROPOSAL); w.writeString(r.message);
+            w.writeNullableBool(p.isCorrect); w.writeString(p.groupTitle); w.writeNullableInt(p.currentScore);
+            w.writeNullableBool(p.isFinished); w.writeGroups(p.solution, null);
+        } else if (r instanceof ServerResponse.GameInfoData) {
+            w.writeByte(RES_GAME_INFO); w.writeString(r.message);
+            writeGameInfoBody((ServerResponse.GameInfoData) r, w);
+        } else if (r instanceof ServerResponse.GameStats) {
+            ServerResponse.GameStats s = (ServerResponse.GameStats) r;
+            w.writeByte(RES_GAME_STATS); w.writeString(r.message);
+            w.writeNullableInt(s.gameId); w.writeNullableInt(s.timeLeft);
+            w.writeNullableInt(s.playersActive); w.writeNullableInt(s.playersFinished); w.writeNullableInt(s.playersWon);
+            w.writeNullableFloat(s.averageScore);
+        } else if (r instanceof ServerResponse.PlayerStats) {
+            ServerResponse.PlayerStats s = (ServerResponse.PlayerStats) r;
+            w.writeByte(RES_PLAYER_STATS); w.writeString(r.message);
+            w.writeNullableInt(s.puzzlesCompleted); w.writeNullableInt(s.currentStreak);
+            w.writeNullableInt(s.maxStreak); w.writeNullableInt(s.perfectPuzzles);
+            w.writeNullableFloat(s.winRate); w.writeNullableFloat(s.lossRate);
+            w.writeIntArray(s.mistakeHistogram);
+        } else if (r instanceof ServerResponse.Leaderboard) {
+            List<ServerResponse.RankingEntry> ranking = ((ServerResponse.Leaderboard) r).ranking;
+            w.writeByte(RES_LEADERBOARD); w.writeString(r.message);
+            w.writeCount(ranking);
+            if (ranking != null) {
+                for (ServerResponse.RankingEntry e : ranking) {
+                    w.writeVarint(e.position); w.writeString(e.username); w.writeSInt(e.score);
+                }
+            }
+        } else if (r instanceof ServerResponse.AdminInfo) {
+            ServerResponse.AdminInfo a = (ServerResponse.AdminInfo) r;
+            w.writeByte(RES_ADMIN); w.writeString(r.message);
+            w.writeString(a.adminPayload);
+            w.writeCount(a.userList);
+            if (a.userList != null) {
+                for (ServerResponse.UserAccountInfo u : a.userList) {
+                    w.writeString(u.username); w.writeString(u.password);
+                    w.writeSInt(u.totalScore); w.writeVarint(u.played); w.writeVarint(u.won);
+                }
+            }
+            w.writeGroups(a.oracleData, null);
+        } else {
+            throw new IllegalArgumentException("Risposta non supportata: " + r.objectCode);
+        }
+    }
+
+    // Le parole dei gruppi sono indici nella griglia 'words' dello stesso messaggio
+    private static void writeGameInfoBody(ServerResponse.GameInfoData g, Writer w) {
+        w.writeNullableInt(g.gameId); w.writeNullableInt(g.timeLeft);
+        w.writeNullableInt(g.mistakes); w.writeNullableInt(g.currentScore);
+        w.writeNullableBool(g.isFinished); w.writeNullableBool(g.isWinner);
+        w.writeWords(g.words, null);
+        List<String> grid = (g.words != null && !g.words.isEmpty()) ? g.words : null;
+        w.writeGroups(g.correctGroups, grid);
+        w.writeGroups(g.solution, grid);
+        w.writeCount(g.playerResults);
+        if (g.playerResults != null) {
+            for (ServerResponse.PlayerResult p : g.playerResults) {
+                w.writeString(p.username); w.writeSInt(p.score); w.writeBool(p.won);
+            }
+        }
+    }
+
+    public static ServerResponse decodeResponse(ByteBuffer in) {
+        int op = readUnsignedByte(in);
+        String message = readString(in);
+        ServerResponse r;
+        switch (op) {
+            case RES_ERROR: {
+                Integer code = readNullableInt(in);
+                r = new ServerResponse.Error(message, code != null ? code : 0);
+                break;
+            }
+            case RES_GENERIC:
+                r = new ServerResponse.Generic(message);
+                break;
+            case RES_EVENT: {
+                ServerResponse.Event e = new ServerResponse.Event(message);
+                e.isFinished = readNullableBool(in);
+                r = e;
+                break;
+            }
+            case RES_AUTH: {
+                ServerResponse.GameInfoData info = null;
+                if (readBool(in)) {
+                    info = new ServerResponse.GameInfoData("OK");
+                    readGameInfoBody(info, in);
+                }
+                r = new ServerResponse.Auth(message, info);
+                break;
+            }
+            case RES_PROPOSAL: {
+                Boolean correct = readNullableBool(in);
+                String title = readString(in);
+                Integer score = readNullableInt(in);
+                ServerResponse.Proposal p = new ServerResponse.Proposal(Boolean.TRUE.equals(correct), title, score != null ? score : 0);
+                p.isCorrect = correct;
+                p.currentScore = score;
+                p.isFinished = readNullableBool(in);
+                p.solution = readGroups(in, null);
+                r = p;
+                break;
+            }
+            case RES_GAME_INFO: {
+                ServerResponse.GameInfoData g = new ServerResponse.GameInfoData(message);
+                readGameInfoBody(g, in);
+                r = g;
+                break;
+            }
+            case RES_GAME_STATS: {
+                ServerResponse.GameStats s = new ServerResponse.GameStats();
+                s.gameId = readNullableInt(in); s.timeLeft = readNullableInt(in);
+                s.playersActive = readNullableInt(in); s.playersFinished = readNullableInt(in); s.playersWon = readNullableInt(in);
+                s.averageScore = readNullableFloat(in);
+                r = s;
+                break;
+            }
+            case RES_PLAYER_STATS: {
+                ServerResponse.PlayerStats s = new ServerResponse.PlayerStats();
+                s.puzzlesCompleted = readNullableInt(in); s.currentStreak = readNullableInt(in);
+                s.maxStreak = readNullableInt(in); s.perfectPuzzles = readNullableInt(in);
+                s.winRate = readNullableFloat(in); s.lossRate = readNullableFloat(in);
+                s.mistakeHistogram = readIntArray(in);
+                r = s;
+                break;
+            }
+            case RES_LEADERBOARD: {
+                int n = readCount(in, 3);
+                List<ServerResponse.RankingEntry> ranking = (n < 0) ? null : new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    ranking.add(new ServerResponse.RankingEntry(readVarint(in), readString(in), readSInt(in)));
+                }
+                r = new ServerResponse.Leaderboard(ranking);
+                break;
+            }
+            case RES_ADMIN: {
+                ServerResponse.AdminInfo a = new ServerResponse.AdminInfo();
+                a.adminPayload = readString(in);
+                int n = readCount(in, 5);
+                if (n >= 0) {
+                    a.userList = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        a.userList.add(new ServerResponse.UserAccountInfo(readString(in), readString(in), readSInt(in), readVarint(in), readVarint(in)));
+                    }
+                }
+                a.oracleData = readGroups(in, null);
+                r = a;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Opcode sconosciuto: " + op);
+        }
+        r.message = message;
+        return r;
+    }
+
+    private static void readGameInfoBody(ServerResponse.GameInfoData g, ByteBuffer in) {
+        g.gameId = readNullableInt(in); g.timeLeft = readNullableInt(in);
+        g.mistakes = readNullableInt(in); g.currentScore = readNullableInt(in);
+        g.isFinished = readNullableBool(in); g.isWinner = readNullableBool(in);
+        g.words = readWords(in, null);
+        List<String> grid = (g.words != null && !g.words.isEmpty()) ? g.words : null;
+        g.correctGroups = readGroups(in, grid);
+        g.solution = readGroups(in, grid);
+        int n = readCount(in, 3);
+        if (n >= 0) {
+            g.playerResults = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                g.playerResults.add(new ServerResponse.PlayerResult(readString(in), readSInt(in), readBool(in)));
+            }
+        }
+    }
+
+    // --- FRAMING ---
+
+    public static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) { value >>>= 7; size++; }
+        return size;
+    }
+
+    public static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Legge il prefisso di lunghezza a partire da pos senza spostare il buffer.
+     * Ritorna (lunghezza << 8 | byte del prefisso), -1 se il prefisso è incompleto, -2 se malformato.
+     */
+    public static long peekVarint(ByteBuffer buf, int pos, int limit) {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (pos + i >= limit) return -1;
+            int b = buf.get(pos + i) & 0xFF;
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) return value < 0 ? -2 : ((long) value << 8) | (i + 1);
+        }
+        return -2;
+    }
+
+    // --- PRIMITIVE DI LETTURA ---
+
+    private static int readUnsignedByte(ByteBuffer in) { return in.get() & 0xFF; }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Varint malformato");
+    }
+
+    private static int readSInt(ByteBuffer in) {
+        int v = readVarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static boolean readBool(ByteBuffer in) { return in.get() != 0; }
+
+    private static Integer readNullableInt(ByteBuffer in) {
+        return readBool(in) ? readSInt(in) : null;
+    }
+
+    private static Boolean readNullableBool(ByteBuffer in) {
+        int b = in.get();
+        return (b == 0) ? null : b == 2;
+    }
+
+    private static Float readNullableFloat(ByteBuffer in) {
+        return readBool(in) ? in.getFloat() : null;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = readVarint(in) - 1;
+        if (len < 0) return null;
+        // la lunghezza arriva dal client: controllo prima di allocare
+        if (len > in.remaining()) throw new IllegalArgumentException("Stringa oltre la fine del frame");
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Numero di elementi (-1 = null). Ogni elemento occupa almeno minBytes: un conteggio che non
+    // sta nei byte rimasti è malformato e viene rifiutato prima di allocare liste o array
+    private static int readCount(ByteBuffer in, int minBytes) {
+        int n = readVarint(in) - 1;
+        if (n > in.remaining() / minBytes) throw new IllegalArgumentException("Numero di elementi oltre la fine del frame");
+        return n;
+    }
+
+    private static int[] readIntArray(ByteBuffer in) {
+        int n = readCount(in, 1);
+        if (n < 0) return null;
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) values[i] = readSInt(in);
+        return values;
+    }
+
+    private static List<String> readWords(ByteBuffer in, List<String> grid) {
+        int n = readCount(in, 1);
+        if (n < 0) return null;
+        List<String> words = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int ref = readUnsignedByte(in);
+            if (ref == INLINE_WORD) {
+                words.add(readString(in));
+            } else {
+                if (grid == null || ref >= grid.size()) throw new IllegalArgumentException("Griglia non aggiornata");
+                words.add(grid.get(ref));
+            }
+        }
+        return words;
+    }
+
+    private static List<ServerResponse.GroupData> readGroups(ByteBuffer in, List<String> grid) {
+        int n = readCount(in, 2);
+        if (n < 0) return null;
+        List<ServerResponse.GroupData> groups = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            groups.add(new ServerResponse.GroupData(readString(in), readWords(in, grid)));
+        }
+        return groups;
+    }
+
+    /**
+     * Buffer di scrittura espandibile, riusabile con reset().
+     */
+    public static class Writer {
+        private byte[] buf = new byte[256];
+        private int size;
+
+        public void reset() { size = 0; }
+        public int size() { return size; }
+        public byte[] array() { return buf; }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length * 2, size + extra)];
+                System.arraycopy(buf, 0, bigger, 0, size);
+                buf = bigger;
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        // zigzag: i numeri negativi piccoli restano piccoli
+        void writeSInt(int value) { writeVarint((value << 1) ^ (value >> 31)); }
+
+        void writeBool(boolean b) { writeByte(b ? 1 : 0); }
+
+        void writeNullableInt(Integer v) {
+            writeBool(v != null);
+            if (v != null) writeSInt(v);
+        }
+
+        void writeNullableBool(Boolean b) { writeByte(b == null ? 0 : (b ? 2 : 1)); }
+
+        void writeNullableFloat(Float f) {
+            writeBool(f != null);
+            if (f != null) {
+                int bits = Float.floatToIntBits(f);
+                writeByte(bits >>> 24); writeByte(bits >>> 16); writeByte(bits >>> 8); writeByte(bits);
+            }
+        }
+
+        void writeString(String s) {
+            if (s == null) { writeVarint(0); return; }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeCount(List<?> list) { writeVarint(list == null ? 0 : list.size() + 1); }
+
+        void writeIntArray(int[] values) {
+            writeVarint(values == null ? 0 : values.length + 1);
+            if (values != null) for (int v : values) writeSInt(v);
+        }
+
+        // Indice nella griglia se la parola c'è, altrimenti la stringa intera
+        void writeWords(List<String> words, List<String> grid) {
+            writeCount(words);
+            if (words == null) return;
+            for (String word : words) {
+                int idx = indexOf(grid, word);
+                if (idx >= 0) {
+                    writeByte(idx);
+                } else {
+                    writeByte(INLINE_WORD);
+                    writeString(word);
+                }
+            }
+        }
+
+        void writeGroups(List<ServerResponse.GroupData> groups, List<String> grid) {
+            writeCount(groups);
+            if (groups == null) return;
+            for (ServerResponse.GroupData g : groups) {
+                writeString(g.theme);
+                writeWords(g.words, grid);
+            }
+        }
+
+        private static int indexOf(List<String> grid, String word) {
+            if (grid == null || word == null) return -1;
+            for (int i = 0; i < grid.size() && i < INLINE_WORD; i++) {
+                if (grid.get(i).equalsIgnoreCase(word)) return i;
+            }
+            return -1;
+        }
+    }
+}
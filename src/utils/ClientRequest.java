@@ -2,16 +2,19 @@ package utils;
 
 import java.util.List;
 
+// I costruttori senza argomenti delle sottoclassi servono alla lettura in streaming (ClientRequestAdapterFactory)
 public abstract class ClientRequest {
     public String operation;
 
     // GESTIONE UTENTE
     public static class Register extends ClientRequest {
         public String name; public String psw;
+        Register() { this.operation = "register"; }
         public Register(String name, String psw) { this.operation = "register"; this.name = name; this.psw = psw; }
     }
     public static class Login extends ClientRequest {
         public String username; public String psw; public int udpPort;
+        Login() { this.operation = "login"; }
         public Login(String u, String p, int port) { this.operation = "login"; this.username = u; this.psw = p; this.udpPort = port; }
     }
     public static class Logout extends ClientRequest {
@@ -19,6 +22,7 @@ public abstract class ClientRequest {
     }
     public static class UpdateCredentials extends ClientRequest {
         public String oldName, newName, oldPsw, newPsw;
+        UpdateCredentials() { this.operation = "updateCredentials"; }
         public UpdateCredentials(String on, String nn, String op, String np) {
             this.operation = "updateCredentials"; this.oldName = on; this.newName = nn; this.oldPsw = op; this.newPsw = np;
         }
@@ -27,6 +31,7 @@ public abstract class ClientRequest {
     // GESTIONE PARTITA 
     public static class SubmitProposal extends ClientRequest {
         public List<String> words;
+        SubmitProposal() { this.operation = "submitProposal"; }
         public SubmitProposal(List<String> w) { this.operation = "submitProposal"; this.words = w; }
     }
     
@@ -66,10 +71,17 @@ public abstract class ClientRequest {
     // COMANDI ADMIN (HIDDEN)
     public static class Oracle extends ClientRequest {
         public String password;
+        Oracle() { this.operation = "oracle"; }
         public Oracle(String password) { this.operation = "oracle"; this.password = password; }
     }
     public static class God extends ClientRequest {
         public String password;
+        God() { this.operation = "god"; }
         public God(String password) { this.operation = "god"; this.password = password; }
     }
+    public static class ServerStats extends ClientRequest {
+        public String password;
+        ServerStats() { this.operation = "serverStats"; }
+        public ServerStats(String password) { this.operation = "serverStats"; this.password = password; }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Deserializzazione polimorfa di ClientRequest in base al campo "operation", in una sola passata.
+ * I campi vengono letti dal JsonReader uno alla volta, ognuno con l'adapter Gson del suo tipo:
+ * dopo "operation" finiscono direttamente nella sottoclasse, quelli arrivati prima
+ * restano in attesa (già convertiti) finché la sottoclasse non è nota. Nessun albero JsonElement.
+ * In scrittura "operation" è il primo campo, così chi legge non deve tenere niente in attesa.
+ */
+public class ClientRequestAdapterFactory implements TypeAdapterFactory {
+
+    // operation -> sottoclasse
+    private static final Map<String, Class<? extends ClientRequest>> TYPES = new HashMap<>();
+    static {
+        TYPES.put("register", ClientRequest.Register.class);
+        TYPES.put("login", ClientRequest.Login.class);
+        TYPES.put("logout", ClientRequest.Logout.class);
+        TYPES.put("updateCredentials", ClientRequest.UpdateCredentials.class);
+        TYPES.put("submitProposal", ClientRequest.SubmitProposal.class);
+        TYPES.put("requestGameInfo", ClientRequest.GameInfo.class);
+        TYPES.put("requestGameStats", ClientRequest.RequestGameStats.class);
+        TYPES.put("requestPlayerStats", ClientRequest.PlayerStats.class);
+        TYPES.put("requestLeaderboard", ClientRequest.Leaderboard.class);
+        TYPES.put("oracle", ClientRequest.Oracle.class);
+        TYPES.put("god", ClientRequest.God.class);
+        TYPES.put("serverStats", ClientRequest.ServerStats.class);
+    }
+
+    // Campo di una sottoclasse con l'adapter del suo tipo
+    private static class BoundField {
+        final Field field;
+        final TypeAdapter<Object> adapter;
+
+        BoundField(Field field, TypeAdapter<Object> adapter) {
+            this.field = field;
+            this.adapter = adapter;
+        }
+
+        void set(ClientRequest target, Object value) {
+            if (value == null && field.getType().isPrimitive()) return; // come Gson: resta il default
+            try {
+                field.set(target, value);
+            } catch (IllegalAccessException e) {
+                throw new JsonParseException("Campo non accessibile: " + field.getName(), e);
+            }
+        }
+    }
+
+    // Sottoclasse: costruttore senza argomenti e campi nell'ordine di dichiarazione
+    private static class Shape {
+        final Constructor<? extends ClientRequest> constructor;
+        final Map<String, BoundField> fields = new LinkedHashMap<>();
+
+        Shape(Constructor<? extends ClientRequest> constructor) {
+            this.constructor = constructor;
+        }
+
+        ClientRequest newInstance(String operation) {
+            try {
+                ClientRequest req = constructor.newInstance();
+                req.operation = operation;
+                return req;
+            } catch (ReflectiveOperationException e) {
+                throw new JsonParseException("Impossibile creare la richiesta " + operation, e);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != ClientRequest.class) return null;
+
+        Map<String, Shape> byOperation = new HashMap<>();
+        Map<Class<?>, Shape> byClass = new HashMap<>();
+        // campi di tutte le sottoclassi per nome: servono a leggere quelli che precedono "operation"
+        Map<String, TypeAdapter<Object>> anyField = new HashMap<>();
+        Map<String, Type> fieldTypes = new HashMap<>();
+
+        for (Map.Entry<String, Class<? extends ClientRequest>> e : TYPES.entrySet()) {
+            Shape shape;
+            try {
+                shape = new Shape(e.getValue().getDeclaredConstructor());
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException(e.getValue().getSimpleName() + " senza costruttore vuoto", ex);
+            }
+            for (Field f : e.getValue().getDeclaredFields()) {
+                int mod = f.getModifiers();
+                if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) continue;
+
+                Type fieldType = f.getGenericType();
+                Type known = fieldTypes.putIfAbsent(f.getName(), fieldType);
+                if (known != null && !known.equals(fieldType)) {
+                    throw new IllegalStateException("Campo '" + f.getName() + "' con tipi diversi tra le richieste");
+                }
+                TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(fieldType));
+                shape.fields.put(f.getName(), new BoundField(f, adapter));
+                anyField.put(f.getName(), adapter);
+            }
+            byOperation.put(e.getKey(), shape);
+            byClass.put(e.getValue(), shape);
+        }
+
+        TypeAdapter<ClientRequest> adapter = new TypeAdapter<ClientRequest>() {
+            @Override
+            public void write(JsonWriter out, ClientRequest value) throws IOException {
+                Shape shape = byClass.get(value.getClass());
+                if (shape == null) throw new JsonParseException("Richiesta non registrata: " + value.getClass().getSimpleName());
+
+                out.beginObject();
+                out.name("operation").value(value.operation);
+                for (Map.Entry<String, BoundField> f : shape.fields.entrySet()) {
+                    Object v;
+                    try {
+                        v = f.getValue().field.get(value);
+                    } catch (IllegalAccessException e) {
+                        throw new JsonParseException("Campo non accessibile: " + f.getKey(), e);
+                    }
+                    if (v == null && !out.getSerializeNulls()) continue;
+                    out.name(f.getKey());
+                    f.getValue().adapter.write(out, v);
+                }
+                out.endObject();
+            }
+
+            @Override
+            public ClientRequest read(JsonReader in) throws IOException {
+                if (in.peek() != JsonToken.BEGIN_OBJECT) throw new JsonParseException("La richiesta deve essere un oggetto JSON");
+
+                Shape shape = null;
+                ClientRequest req = null;
+                Map<String, Object> early = null; // campi letti prima di "operation"
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if ("operation".equals(name) && req == null) {
+                        JsonToken t = in.peek();
+                        if (t != JsonToken.STRING && t != JsonToken.NUMBER) throw new JsonParseException("Campo 'operation' mancante");
+                        String op = in.nextString();
+                        shape = byOperation.get(op);
+                        if (shape == null) throw new JsonParseException("Operazione sconosciuta: " + op);
+
+                        req = shape.newInstance(op);
+                        if (early != null) {
+                            for (Map.Entry<String, Object> e : early.entrySet()) {
+                                BoundField f = shape.fields.get(e.getKey());
+                                if (f != null) f.set(req, e.getValue());
+                            }
+                        }
+                    } else if (req != null) {
+                        BoundField f = shape.fields.get(name);
+                        if (f != null) f.set(req, f.adapter.read(in));
+                        else in.skipValue();
+                    } else {
+                        TypeAdapter<Object> a = anyField.get(name);
+                        if (a == null) {
+                            in.skipValue();
+                            continue;
+                        }
+                        if (early == null) early = new HashMap<>();
+                        early.put(name, a.read(in));
+                    }
+                }
+                in.endObject();
+
+                if (req == null) throw new JsonParseException("Campo 'operation' mancante");
+                return req;
+            }
+        };
+        return (TypeAdapter<T>) adapter.nullSafe();
+    }
+}
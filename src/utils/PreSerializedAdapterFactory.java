@@ -0,0 +1,44 @@
+package utils;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Per i campi di tipo collezione: se il valore è una PreSerializedList
+ * scrive il suo JSON già pronto, altrimenti usa l'adapter standard di Gson.
+ */
+public class PreSerializedAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (!Collection.class.isAssignableFrom(type.getRawType())) return null;
+        TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+
+        return new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                if (value instanceof PreSerializedList) {
+                    try {
+                        out.jsonValue(((PreSerializedList<?>) value).getJson());
+                        return;
+                    } catch (UnsupportedOperationException e) {
+                        // writer ad albero (toJsonTree): serializzo normalmente
+                    }
+                }
+                delegate.write(out, value);
+            }
+
+            @Override
+            public T read(JsonReader in) throws IOException {
+                return delegate.read(in);
+            }
+        };
+    }
+}
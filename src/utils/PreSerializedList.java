@@ -0,0 +1,37 @@
+package utils;
+
+import com.google.gson.Gson;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Lista immutabile che porta con sé la propria forma JSON già calcolata.
+ * Con PreSerializedAdapterFactory registrata, Gson copia il JSON così com'è
+ * invece di riserializzare gli elementi ad ogni risposta.
+ */
+public class PreSerializedList<T> extends AbstractList<T> implements RandomAccess {
+    private final List<T> items;
+    private final String json;
+
+    private PreSerializedList(List<T> items, String json) {
+        this.items = items;
+        this.json = json;
+    }
+
+    public static <T> PreSerializedList<T> of(List<T> items, Gson gson) {
+        List<T> copy = Collections.unmodifiableList(new ArrayList<>(items));
+        return new PreSerializedList<>(copy, gson.toJson(copy));
+    }
+
+    public String getJson() { return json; }
+
+    @Override
+    public T get(int index) { return items.get(index); }
+
+    @Override
+    public int size() { return items.size(); }
+}
@@ -12,6 +12,7 @@ public class ResponseCodes {
     public static final int ALREADY_LOGGED_IN = 405;     // Utente già connesso altrove
     public static final int TIMEOUT = 408;               // Tempo scaduto
     public static final int GAME_FINISHED = 409;         // Partita già conclusa per l'utente
+    public static final int PAYLOAD_TOO_LARGE = 413;     // Messaggio oltre la dimensione massima
     
     // Errori specifici di Logica Gioco
     public static final int INVALID_WORDS = 410;         // Parole non presenti nella griglia